@@ -0,0 +1,63 @@
+package rpulp.mouclade;
+
+/**
+ * Parser listener doing nothing but counting, to measure the parser alone.
+ */
+class NullListener implements InputParser.Listener {
+
+    long count = 0;
+
+    @Override public void handleOsc(int param, byte[] text, int offset, int len) { ++count; }
+
+    @Override public void addChar(int byt) { ++count; }
+
+    @Override public void addChars(int[] codePoints, int off, int len) { count += len; }
+
+    @Override public void cursorUp(int n) { ++count; }
+
+    @Override public void cursorDown(int n) { ++count; }
+
+    @Override public void cursorForward(int n) { ++count; }
+
+    @Override public void cursorBack(int n) { ++count; }
+
+    @Override public void cursorNextLine(int n) { ++count; }
+
+    @Override public void cursorPreviousLine(int n) { ++count; }
+
+    @Override public void cursorHorizontalAbsolute(int col) { ++count; }
+
+    @Override public void cursorPosition(int row, int col) { ++count; }
+
+    @Override public void eraseDisplay(int n) { ++count; }
+
+    @Override public void eraseInLine(int n) { ++count; }
+
+    @Override public void scrollUp(int n) { ++count; }
+
+    @Override public void scrollDown(int n) { ++count; }
+
+    @Override public void setScrollRegion(int top, int bottom) { ++count; }
+
+    @Override public void insertLines(int n) { ++count; }
+
+    @Override public void deleteLines(int n) { ++count; }
+
+    @Override public void reverseIndex() { ++count; }
+
+    @Override public void selectGfxRendition(int[] params, int count) { ++this.count; }
+
+    @Override public void auxPort(int n) { ++count; }
+
+    @Override public void saveCursorPos() { ++count; }
+
+    @Override public void restoreCursorPos() { ++count; }
+
+    @Override public void hideCursor() { ++count; }
+
+    @Override public void showCursor() { ++count; }
+
+    @Override public void setPrivateMode(int mode, boolean enabled) { ++count; }
+
+    @Override public void setKeypadMode(boolean application) { ++count; }
+}
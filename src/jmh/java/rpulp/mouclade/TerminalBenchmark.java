@@ -0,0 +1,91 @@
+package rpulp.mouclade;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the parser and the model over 1 MiB workloads: the reported ops/s are MiB/s.
+ *
+ * Build and run with:
+ * <pre>
+ * mvn -Pbench package
+ * java -jar target/benchmarks.jar -prof gc
+ * </pre>
+ * -prof gc adds the allocation rate, gc.alloc.rate.norm is the number of bytes allocated per MiB parsed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TerminalBenchmark {
+
+    /** bytes parsed between two repaints, about what a busy process writes in a 60Hz frame */
+    private static final int FRAME_SIZE = 16 * 1024;
+
+    @Param({"ascii", "sgr", "fullscreen", "longlines"})
+    public String workload;
+
+    private byte[] bytes;
+    private NullListener nullListener;
+    private InputParser nullParser;
+    private TerminalModel model;
+    private InputParser modelParser;
+    private final RowCounter rowCounter = new RowCounter();
+
+    @Setup
+    public void setup() {
+        bytes = Workloads.generate(workload);
+        nullListener = new NullListener();
+        nullParser = new InputParser(nullListener);
+        model = new TerminalModel(new Scrollback(10_000, 0));
+        modelParser = new InputParser(model);
+    }
+
+    /** parser alone */
+    @Benchmark
+    public long parse() {
+        nullParser.parse(bytes);
+        return nullListener.count;
+    }
+
+    /** parser writing to the model, with scrollback */
+    @Benchmark
+    public void parseIntoModel() {
+        modelParser.parse(bytes);
+    }
+
+    /** parser writing to the model, with the damage drained once per frame like the views do */
+    @Benchmark
+    public long parseIntoModelAndDrain() {
+        for (int off = 0; off < bytes.length; off += FRAME_SIZE) {
+            synchronized (model) {
+                modelParser.parse(bytes, off, Math.min(FRAME_SIZE, bytes.length - off));
+            }
+            model.drainDamage(rowCounter);
+        }
+        return rowCounter.rows;
+    }
+
+    private static class RowCounter implements TerminalModel.Listener {
+        long rows = 0;
+
+        @Override public void onScroll(int top, int bottom, int n) {}
+
+        @Override public void onRowUpdate(int y) { ++rows; }
+
+        @Override public void onFullUpdate() { rows += 40; }
+    }
+}
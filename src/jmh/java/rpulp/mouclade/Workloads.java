@@ -0,0 +1,107 @@
+package rpulp.mouclade;
+
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Reproducible terminal outputs for the benchmarks, each one exactly {@link #SIZE} bytes.
+ */
+class Workloads {
+
+    /** 1 MiB, so a benchmark reporting ops/s over a workload reports MiB/s */
+    static final int SIZE = 1024 * 1024;
+
+    private static final String WORDS = "the quick brown fox jumps over lazy dog build target src main java test error warning";
+    private static final String[] WORD_LIST = WORDS.split(" ");
+
+    static byte[] generate(String name) {
+        Random random = new Random(42);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(SIZE + 8192);
+        while (out.size() < SIZE) {
+            switch (name) {
+                case "ascii": asciiLine(random, out); break;
+                case "sgr": sgrLine(random, out); break;
+                case "fullscreen": fullScreenFrame(random, out); break;
+                case "longlines": longLine(random, out); break;
+                default: throw new IllegalArgumentException("unknown workload " + name);
+            }
+        }
+        byte[] bytes = out.toByteArray();
+        byte[] truncated = new byte[SIZE];
+        System.arraycopy(bytes, 0, truncated, 0, SIZE);
+        return truncated;
+    }
+
+    /** plain text lines, like a build log */
+    private static void asciiLine(Random random, ByteArrayOutputStream out) {
+        StringBuilder sb = new StringBuilder();
+        int len = 20 + random.nextInt(60);
+        while (sb.length() < len) {
+            sb.append(word(random)).append(' ');
+        }
+        sb.append("\r\n");
+        write(out, sb);
+    }
+
+    /** colored output, like ls --color or compiler diagnostics */
+    private static void sgrLine(Random random, ByteArrayOutputStream out) {
+        StringBuilder sb = new StringBuilder();
+        if (random.nextBoolean()) {
+            for (int ii = 0; ii < 5; ++ii) {
+                sb.append("\u001B[01;").append(31 + random.nextInt(6)).append('m').append(word(random)).append("\u001B[0m  ");
+            }
+        } else {
+            sb.append("\u001B[1m").append(word(random)).append(".c:").append(random.nextInt(999)).append(':')
+                    .append(random.nextInt(80)).append(": \u001B[1;31merror: \u001B[0m")
+                    .append(word(random)).append(' ').append(word(random)).append(" \u001B[1m'").append(word(random))
+                    .append("'\u001B[0m");
+        }
+        sb.append("\r\n");
+        write(out, sb);
+    }
+
+    /** a cursor addressed redraw of a 80x40 screen, like vim or top */
+    private static void fullScreenFrame(Random random, ByteArrayOutputStream out) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\u001B[H");
+        for (int row = 1; row <= 40; ++row) {
+            sb.append("\u001B[").append(row).append(";1H");
+            if (row == 40) {
+                sb.append("\u001B[7m");
+            }
+            StringBuilder line = new StringBuilder();
+            int len = random.nextInt(70);
+            while (line.length() < len) {
+                line.append(word(random)).append(' ');
+            }
+            sb.append(line).append("\u001B[K");
+            if (row == 40) {
+                sb.append("\u001B[0m");
+            }
+        }
+        sb.append("\u001B[").append(1 + random.nextInt(40)).append(';').append(1 + random.nextInt(80)).append('H');
+        write(out, sb);
+    }
+
+    /** lines much longer than the screen width, wrapped by the terminal */
+    private static void longLine(Random random, ByteArrayOutputStream out) {
+        StringBuilder sb = new StringBuilder();
+        int len = 1000 + random.nextInt(4000);
+        while (sb.length() < len) {
+            sb.append(word(random)).append(',');
+        }
+        sb.append("\r\n");
+        write(out, sb);
+    }
+
+    private static String word(Random random) {
+        return WORD_LIST[random.nextInt(WORD_LIST.length)];
+    }
+
+    private static void write(ByteArrayOutputStream out, StringBuilder sb) {
+        byte[] bytes = sb.toString().getBytes(Charsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,77 @@
+package rpulp.mouclade;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * What the views share: the damage drained once per pulse, and the model fitted to the pixel size of the view.
+ */
+abstract class AbstractView implements View {
+
+    final TerminalModel model;
+    // the cell size in pixels, set by the subclasses with their font
+    double cellW;
+    double cellH;
+
+    private final TerminalModel.Listener damageListener = new TerminalModel.Listener() {
+        @Override
+        public void onScroll(int top, int bottom, int n) {
+            scroll(top, bottom, n);
+        }
+
+        @Override
+        public void onRowUpdate(int y) {
+            updateRow(y);
+        }
+
+        @Override
+        public void onFullUpdate() {
+            updateAllCells();
+        }
+    };
+
+    // repaints what changed at most once per pulse, however fast the model is written to
+    private final AnimationTimer repaintTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            repaint();
+        }
+    };
+
+    AbstractView(TerminalModel model) {
+        this.model = model;
+    }
+
+    /** starts the repaints, once the subclass is set up */
+    void start() {
+        repaintTimer.start();
+    }
+
+    /** called once per pulse */
+    void repaint() {
+        model.drainDamage(damageListener);
+    }
+
+    @Override
+    public void fit(double width, double height) {
+        final int cols = Math.max(1, (int) (width / cellW));
+        final int rows = Math.max(1, (int) (height / cellH));
+        if (model.resize(cols, rows)) {
+            resize(cols, rows);
+        }
+    }
+
+    /** the model was resized to width x height cells */
+    abstract void resize(int width, int height);
+
+    /** see {@link TerminalModel.Listener#onScroll(int, int, int)}, called under the model monitor */
+    abstract void scroll(int top, int bottom, int n);
+
+    /** called under the model monitor */
+    abstract void updateRow(int y);
+
+    void updateAllCells() {
+        for (int yy = 0; yy < model.height(); ++yy) {
+            updateRow(yy);
+        }
+    }
+}
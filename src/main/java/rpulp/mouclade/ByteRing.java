@@ -0,0 +1,73 @@
+package rpulp.mouclade;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free single producer / single consumer ring of bytes.
+ *
+ * offer() must only be called by one thread and poll() by one (other) thread, neither blocks.
+ */
+class ByteRing {
+
+    private final byte[] buffer;
+    private final int mask;
+
+    // positions only grow, the index in buffer is (position & mask)
+    private final AtomicLong head = new AtomicLong(); // next read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next write, written by the producer
+
+    /**
+     * @param capacity rounded up to a power of 2
+     */
+    ByteRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.buffer = new byte[size];
+        this.mask = size - 1;
+    }
+
+    int capacity() { return buffer.length; }
+
+    int size() { return (int) (tail.get() - head.get()); }
+
+    boolean isEmpty() { return tail.get() == head.get(); }
+
+    /**
+     * copies as many bytes as fit
+     *
+     * @return the number of bytes copied, 0 if the ring is full
+     */
+    int offer(byte[] src, int off, int len) {
+        final long t = tail.get();
+        final int free = buffer.length - (int) (t - head.get());
+        final int count = Math.min(free, len);
+        if (count <= 0) {
+            return 0;
+        }
+        final int at = (int) t & mask;
+        final int first = Math.min(count, buffer.length - at);
+        System.arraycopy(src, off, buffer, at, first);
+        System.arraycopy(src, off + first, buffer, 0, count - first);
+        tail.set(t + count);
+        return count;
+    }
+
+    /**
+     * copies as many bytes as available, up to len
+     *
+     * @return the number of bytes copied, 0 if the ring is empty
+     */
+    int poll(byte[] dst, int off, int len) {
+        final long h = head.get();
+        final int available = (int) (tail.get() - h);
+        final int count = Math.min(available, len);
+        if (count <= 0) {
+            return 0;
+        }
+        final int at = (int) h & mask;
+        final int first = Math.min(count, buffer.length - at);
+        System.arraycopy(buffer, at, dst, off, first);
+        System.arraycopy(buffer, 0, dst, off + first, count - first);
+        head.set(h + count);
+        return count;
+    }
+}
@@ -0,0 +1,120 @@
+package rpulp.mouclade;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.text.Text;
+
+/**
+ * Draws the terminal on a single canvas from a glyph atlas, the node count does not depend on the terminal size.
+ *
+ * A scroll copies the rows that stay with one snapshot of the canvas, at most one per frame since the damage keeps a
+ * single scroll, and only the exposed rows are drawn again. The cells are sized in whole pixels so the copied rows
+ * stay aligned.
+ */
+class CanvasTerminalView extends AbstractView {
+
+    private final Canvas canvas = new Canvas();
+    private final StyleResources resources = new StyleResources();
+    private final GlyphAtlas atlas = new GlyphAtlas();
+    private final SnapshotParameters scrollParams = new SnapshotParameters();
+    // the rows copied by the last scroll, reused while the scrolls copy as many rows
+    private WritableImage scrollImage;
+
+    CanvasTerminalView(TerminalModel model) {
+        super(model);
+        setFont("Monospaced", 18);
+        start();
+    }
+
+    @Override
+    public Canvas node() { return canvas; }
+
+    private void setFont(String family, double size) {
+        resources.setFont(family, size);
+        Text text = new Text(" ");
+        text.setFont(resources.font(0));
+        cellW = Math.ceil(text.getLayoutBounds().getWidth());
+        cellH = Math.ceil(text.getLayoutBounds().getHeight());
+        atlas.setFont(resources, cellW, cellH);
+        resize(model.width(), model.height());
+    }
+
+    @Override
+    void repaint() {
+        if (atlas.beginFrame()) {
+            model.damageAll();
+        }
+        super.repaint();
+        atlas.endFrame();
+    }
+
+    @Override
+    void resize(int width, int height) {
+        // the model damages all the rows on a resize
+        canvas.setWidth(width * cellW);
+        canvas.setHeight(height * cellH);
+    }
+
+    @Override
+    void scroll(int top, int bottom, int n) {
+        final int kept = bottom - top + 1 - Math.abs(n);
+        final int from = n > 0 ? top + n : top;
+        final int to = n > 0 ? top : top - n;
+        final int w = (int) canvas.getWidth();
+        final int h = (int) (kept * cellH);
+        if (scrollImage != null && ((int) scrollImage.getWidth() != w || (int) scrollImage.getHeight() != h)) {
+            scrollImage = null;
+        }
+        scrollParams.setViewport(new Rectangle2D(0, from * cellH, w, h));
+        scrollImage = canvas.snapshot(scrollParams, scrollImage);
+        canvas.getGraphicsContext2D().drawImage(scrollImage, 0, to * cellH);
+    }
+
+    @Override
+    void updateRow(int y) {
+        final GraphicsContext gc = canvas.getGraphicsContext2D();
+        final double y0 = y * cellH;
+        final int[] codePoints = model.codePoints();
+        final StyleTable styleTable = model.styleTable();
+        final int rowStart = model.rowStart(y);
+        final int[] spans = model.styleSpans(y);
+        final int count = spans[0];
+
+        // one background, one style lookup and at most two decoration lines per run
+        for (int ii = 0; ii < count; ++ii) {
+            final int at = 1 + ii * StyleSpans.SPAN_SIZE;
+            final int start = spans[at];
+            final int len = spans[at + 1];
+            final int style = spans[at + 2];
+            final int flags = styleTable.flags(style);
+            final double x0 = start * cellW;
+            final double x1 = (start + len) * cellW;
+            gc.setFill(resources.color(styleTable.bgRgb(style)));
+            gc.fillRect(x0, y0, x1 - x0, cellH);
+
+            final int fg = StyleResources.fgRgb(styleTable, style);
+            if ((flags & StyleTable.INVISIBLE) == 0) {
+                final int variant = StyleResources.variant(flags);
+                for (int xx = start; xx < start + len; ++xx) {
+                    final int codePoint = codePoints[rowStart + xx];
+                    if (codePoint != ' ') {
+                        atlas.draw(gc, codePoint, fg, variant, xx * cellW, y0);
+                    }
+                }
+            }
+            if ((flags & (StyleTable.UNDERLINE | StyleTable.STRIKE)) != 0) {
+                gc.setStroke(resources.color(fg));
+                gc.setLineWidth(1);
+                if ((flags & StyleTable.UNDERLINE) != 0) {
+                    gc.strokeLine(x0, y0 + cellH - 1.5, x1, y0 + cellH - 1.5);
+                }
+                if ((flags & StyleTable.STRIKE) != 0) {
+                    gc.strokeLine(x0, y0 + cellH / 2, x1, y0 + cellH / 2);
+                }
+            }
+        }
+    }
+}
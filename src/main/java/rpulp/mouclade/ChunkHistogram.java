@@ -0,0 +1,67 @@
+package rpulp.mouclade;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of read sizes, in power of 2 buckets: bucket n counts the sizes in [2^n, 2^(n+1)).
+ *
+ * Recorded by one reader thread, may be read from any thread, the JMX clients included.
+ */
+class ChunkHistogram implements ChunkHistogramMXBean {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray bytes = new AtomicLongArray(BUCKETS);
+
+    void record(int len) {
+        if (len <= 0) {
+            return;
+        }
+        final int bucket = 31 - Integer.numberOfLeadingZeros(len);
+        counts.incrementAndGet(bucket);
+        bytes.addAndGet(bucket, len);
+    }
+
+    long count(int bucket) { return counts.get(bucket); }
+
+    @Override
+    public long getReads() {
+        long total = 0;
+        for (int ii = 0; ii < BUCKETS; ++ii) {
+            total += counts.get(ii);
+        }
+        return total;
+    }
+
+    @Override
+    public long getBytes() {
+        long total = 0;
+        for (int ii = 0; ii < BUCKETS; ++ii) {
+            total += bytes.get(ii);
+        }
+        return total;
+    }
+
+    @Override
+    public long[] getCounts() {
+        final long[] copy = new long[BUCKETS];
+        for (int ii = 0; ii < BUCKETS; ++ii) {
+            copy[ii] = counts.get(ii);
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("reads: ").append(getReads()).append(", bytes: ").append(getBytes());
+        for (int ii = 0; ii < BUCKETS; ++ii) {
+            long count = counts.get(ii);
+            if (count != 0) {
+                sb.append(", ").append(1L << ii).append("+: ").append(count);
+            }
+        }
+        return sb.toString();
+    }
+}
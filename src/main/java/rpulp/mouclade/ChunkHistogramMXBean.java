@@ -0,0 +1,14 @@
+package rpulp.mouclade;
+
+/**
+ * The read sizes of the output of a session, published over JMX by the {@link SessionManager}.
+ */
+public interface ChunkHistogramMXBean {
+
+    long getReads();
+
+    long getBytes();
+
+    /** the read counts by bucket, bucket n counts the sizes in [2^n, 2^(n+1)) */
+    long[] getCounts();
+}
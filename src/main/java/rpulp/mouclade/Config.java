@@ -16,6 +16,23 @@ class Config {
         return value;
     }
 
+    private static String getEnvOr(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static long getEnvOr(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("bad env " + name + ": " + value, ex);
+        }
+    }
+
     private static final String EXE;
     private static final String IOS_LOG;
     static {
@@ -26,4 +43,21 @@ class Config {
 
     static final String PATH = getEnvOrFail("MOUCLADE_PATH");
     static final ArrayList<String> NATIVE_COMMAND = Lists.newArrayList(EXE, "--log-ios", IOS_LOG);
+
+    static final int SCROLLBACK_LINES = (int) getEnvOr("MOUCLADE_SCROLLBACK_LINES", 10_000);
+    static final long SCROLLBACK_BYTES = getEnvOr("MOUCLADE_SCROLLBACK_BYTES", 0);
+
+    // "nodes": one Text and Rectangle per style run, "canvas": a single canvas drawn from a glyph atlas
+    static final String RENDERER = getEnvOr("MOUCLADE_RENDERER", "nodes");
+
+    // frame rate of the views while the output floods the screen
+    static final int FLOOD_FPS = (int) getEnvOr("MOUCLADE_FLOOD_FPS", 20);
+
+    // "platform" or "virtual" (java 21+, falls back to platform): threads blocked reading and writing the processes,
+    // their blocking reads and writes pin the virtual threads, see IoThreads
+    static final String IO_THREADS = getEnvOr("MOUCLADE_IO_THREADS", "platform");
+
+    // threads parsing the output of all the sessions
+    static final int PUMP_THREADS = (int) getEnvOr("MOUCLADE_PUMP_THREADS",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
 }
@@ -0,0 +1,96 @@
+package rpulp.mouclade;
+
+import java.util.BitSet;
+
+/**
+ * Rows of the screen changed since the view last painted, and the scroll the view can apply by moving what it already
+ * painted.
+ *
+ * Row numbers are the ones of the current screen: when a scroll is recorded, the rows damaged before it move with
+ * their content. Only one scroll is kept, a scroll of another region or direction damages its rows instead.
+ */
+class Damage {
+
+    private final BitSet rows = new BitSet(128);
+    private boolean all = false;
+
+    // pending scroll of the rows scrollTop..scrollBottom (inclusive) by scrollCount, up when > 0, 0 when none
+    private int scrollTop;
+    private int scrollBottom;
+    private int scrollCount = 0;
+
+    void row(int yy) {
+        if (!all) {
+            rows.set(yy);
+        }
+    }
+
+    void all() {
+        all = true;
+        rows.clear();
+        scrollCount = 0;
+    }
+
+    /**
+     * the rows top..bottom (inclusive) moved up by n when n > 0, down by -n when n < 0, the exposed rows are damaged
+     */
+    void scroll(int top, int bottom, int n) {
+        if (all || n == 0) {
+            return;
+        }
+        final int regionRows = bottom - top + 1;
+        final boolean merge = scrollCount == 0
+                || (top == scrollTop && bottom == scrollBottom && (n > 0) == (scrollCount > 0));
+        if (!merge || Math.abs(scrollCount + n) >= regionRows) {
+            // not worth a blit, repaint the region
+            rows.set(top, bottom + 1);
+            if (merge) {
+                scrollCount = 0;
+            }
+            return;
+        }
+        shiftRows(top, bottom, n);
+        scrollTop = top;
+        scrollBottom = bottom;
+        scrollCount += n;
+    }
+
+    private void shiftRows(int top, int bottom, int n) {
+        if (n > 0) {
+            for (int yy = top; yy <= bottom - n; ++yy) {
+                rows.set(yy, rows.get(yy + n));
+            }
+            rows.set(bottom - n + 1, bottom + 1);
+        } else {
+            for (int yy = bottom; yy >= top - n; --yy) {
+                rows.set(yy, rows.get(yy + n));
+            }
+            rows.set(top, top - n);
+        }
+    }
+
+    boolean isEmpty() { return !all && scrollCount == 0 && rows.isEmpty(); }
+
+    /**
+     * reports the scroll, then the damaged rows to the listener and resets the damage
+     */
+    void drain(TerminalModel.Listener listener) {
+        if (all) {
+            listener.onFullUpdate();
+        } else {
+            if (scrollCount != 0) {
+                listener.onScroll(scrollTop, scrollBottom, scrollCount);
+            }
+            for (int yy = rows.nextSetBit(0); yy >= 0; yy = rows.nextSetBit(yy + 1)) {
+                listener.onRowUpdate(yy);
+            }
+        }
+        clear();
+    }
+
+    void clear() {
+        all = false;
+        rows.clear();
+        scrollCount = 0;
+    }
+}
@@ -0,0 +1,181 @@
+package rpulp.mouclade;
+
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Find in the screen and the history of a terminal, see {@link Searcher}: the search runs again as the query is typed,
+ * which cancels the running one, and its hits are listed with their rows as they are found.
+ *
+ * Hidden until {@link #open()}, Escape hides it. The keys typed in the bar do not reach the terminal. Used from the FX
+ * thread.
+ */
+class FindBar implements AutoCloseable {
+
+    private static final int MAX_SHOWN_HITS = 1000;
+
+    /**
+     * the hits of one search, queued by the search thread and shown in batches on the FX thread
+     */
+    private class Results implements Searcher.Listener {
+        private final ConcurrentLinkedQueue<String> found = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean showQueued = new AtomicBoolean();
+        private volatile int count = 0;
+        private volatile boolean done = false;
+
+        @Override
+        public void onMatch(Searcher.Match match) {
+            if (count++ < MAX_SHOWN_HITS) {
+                found.add(format(match));
+            }
+            queueShow();
+        }
+
+        @Override
+        public void onDone(int matchCount, boolean cancelled) {
+            done = true;
+            queueShow();
+        }
+
+        private void queueShow() {
+            if (showQueued.compareAndSet(false, true)) {
+                Platform.runLater(this::show);
+            }
+        }
+
+        private void show() {
+            showQueued.set(false);
+            if (this != results) {
+                return; // a newer search is running
+            }
+            for (String hit = found.poll(); hit != null; hit = found.poll()) {
+                hits.getItems().add(hit);
+            }
+            final int shown = count;
+            status.setText(shown + (shown == 1 ? " hit" : " hits")
+                    + (shown > MAX_SHOWN_HITS ? ", the first " + MAX_SHOWN_HITS + " listed" : "")
+                    + (done ? "" : ", searching"));
+        }
+    }
+
+    private final Searcher searcher;
+    private final Node terminal;
+    private final VBox box = new VBox();
+    private final TextField query = new TextField();
+    private final CheckBox regex = new CheckBox("regex");
+    private final CheckBox ignoreCase = new CheckBox("ignore case");
+    private final Label status = new Label();
+    private final ListView<String> hits = new ListView<>();
+    private Results results;
+
+    /**
+     * @param terminal gets the focus back when the bar hides
+     */
+    FindBar(TerminalModel model, Node terminal) {
+        this.searcher = new Searcher(model);
+        this.terminal = terminal;
+        HBox.setHgrow(query, Priority.ALWAYS);
+        HBox line = new HBox(8, new Label("Find"), query, regex, ignoreCase, status);
+        line.setAlignment(Pos.CENTER_LEFT);
+        hits.setPrefHeight(200);
+        box.getChildren().addAll(line, hits);
+        box.setStyle("-fx-background-color: -fx-background; -fx-padding: 4;");
+        box.setMaxHeight(VBox.USE_PREF_SIZE);
+        box.addEventFilter(KeyEvent.KEY_PRESSED, evt -> {
+            if (evt.getCode() == KeyCode.ESCAPE) {
+                hide();
+                evt.consume();
+            }
+        });
+        // what the controls did not use is not for the terminal
+        box.addEventHandler(KeyEvent.ANY, Event::consume);
+        query.textProperty().addListener((obs, oldValue, newValue) -> search());
+        regex.selectedProperty().addListener((obs, oldValue, newValue) -> search());
+        ignoreCase.selectedProperty().addListener((obs, oldValue, newValue) -> search());
+        setShown(false);
+    }
+
+    Node node() { return box; }
+
+    /** shows the bar, the search runs again since the terminal changed */
+    void open() {
+        setShown(true);
+        query.requestFocus();
+        query.selectAll();
+        search();
+    }
+
+    /** hides the bar and cancels the search */
+    void hide() {
+        setShown(false);
+        results = null;
+        searcher.cancel();
+        terminal.requestFocus();
+    }
+
+    /** true if the focus is in the bar, the keys are for the bar then */
+    boolean hasFocus() {
+        for (Node node = box.getScene() == null ? null : box.getScene().getFocusOwner(); node != null;
+                node = node.getParent()) {
+            if (node == box) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** stops the search thread */
+    @Override
+    public void close() {
+        searcher.close();
+    }
+
+    private void setShown(boolean shown) {
+        box.setVisible(shown);
+        box.setManaged(shown);
+    }
+
+    private void search() {
+        hits.getItems().clear();
+        results = null;
+        if (query.getText().isEmpty()) {
+            searcher.cancel();
+            status.setText("");
+            return;
+        }
+        final Results next = new Results();
+        try {
+            searcher.search(query.getText(), regex.isSelected(), ignoreCase.isSelected(), next);
+        } catch (PatternSyntaxException ex) {
+            searcher.cancel();
+            status.setText("bad regex: " + ex.getDescription());
+            return;
+        }
+        results = next;
+        status.setText("searching");
+    }
+
+    private static String format(Searcher.Match match) {
+        int end = match.text.length();
+        while (end > 0 && match.text.charAt(end - 1) == ' ') {
+            --end;
+        }
+        return (match.screenRow >= 0 ? "screen " + match.screenRow : "history " + match.historyRowId)
+                + ", column " + match.column + ": " + match.text.substring(0, end);
+    }
+}
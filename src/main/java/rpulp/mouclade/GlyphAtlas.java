@@ -0,0 +1,115 @@
+package rpulp.mouclade;
+
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Cache of pre-rendered glyphs, packed in a single image so a cell is drawn with one drawImage.
+ *
+ * Glyphs are keyed by code point, foreground color and font variant, a glyph is rasterized the first time it is requested. The
+ * new glyphs of a frame are drawn on a scratch canvas and copied to the atlas with one snapshot, a snapshot being a
+ * render pass of its own, at the end of the frame or when the scratch is full. When the atlas is full the glyphs left
+ * are drawn as text until the next frame, which starts with an empty atlas, see {@link GlyphSlots}. Must be used from
+ * the FX thread.
+ */
+class GlyphAtlas {
+
+    private static final int ATLAS_SIZE = 1024;
+    private static final int SCRATCH_ROWS = 4;
+
+    private final WritableImage image = new WritableImage(ATLAS_SIZE, ATLAS_SIZE);
+    private final GlyphSlots slots = new GlyphSlots();
+    private final SnapshotParameters snapshotParams = new SnapshotParameters();
+
+    private StyleResources resources;
+    private int slotW;
+    private int slotH;
+    private int slotsPerRow;
+    private Canvas scratch;
+    // the slots pendingFrom.. are drawn on the scratch, not yet copied to the atlas
+    private int pendingFrom = 0;
+
+    GlyphAtlas() {
+        snapshotParams.setFill(Color.TRANSPARENT);
+    }
+
+    void setFont(StyleResources resources, double cellW, double cellH) {
+        this.resources = resources;
+        this.slotW = (int) Math.ceil(cellW);
+        this.slotH = (int) Math.ceil(cellH);
+        this.slotsPerRow = ATLAS_SIZE / slotW;
+        this.scratch = new Canvas(slotsPerRow * slotW, SCRATCH_ROWS * slotH);
+        slots.reset(slotsPerRow * (ATLAS_SIZE / slotH));
+        pendingFrom = 0;
+    }
+
+    /**
+     * to be called before drawing a frame
+     *
+     * @return true if the atlas was emptied, what was drawn with it should be drawn again
+     */
+    boolean beginFrame() {
+        if (!slots.beginFrame()) {
+            return false;
+        }
+        pendingFrom = 0;
+        return true;
+    }
+
+    /** to be called once the frame is drawn, copies the new glyphs to the atlas */
+    void endFrame() {
+        flush();
+    }
+
+    /** draws a glyph with its top left corner at x, y */
+    void draw(GraphicsContext gc, int codePoint, int fgRgb, int variant, double x, double y) {
+        final long key = GlyphSlots.key(codePoint, fgRgb, variant);
+        int slot = slots.get(key);
+        if (slot == GlyphSlots.NO_SLOT) {
+            slot = slots.add(key);
+            if (slot == GlyphSlots.NO_SLOT) {
+                drawText(gc, codePoint, fgRgb, variant, x, y);
+                return;
+            }
+            rasterize(codePoint, fgRgb, variant, slot - pendingFrom);
+            if (slots.count() - pendingFrom == SCRATCH_ROWS * slotsPerRow) {
+                flush();
+            }
+        }
+        gc.drawImage(image, slotX(slot), slotY(slot), slotW, slotH, x, y, slotW, slotH);
+    }
+
+    private int slotX(int slot) { return (slot % slotsPerRow) * slotW; }
+
+    private int slotY(int slot) { return (slot / slotsPerRow) * slotH; }
+
+    private void rasterize(int codePoint, int fgRgb, int variant, int scratchSlot) {
+        drawText(scratch.getGraphicsContext2D(), codePoint, fgRgb, variant, slotX(scratchSlot), slotY(scratchSlot));
+    }
+
+    private void drawText(GraphicsContext gc, int codePoint, int fgRgb, int variant, double x, double y) {
+        gc.setFont(resources.font(variant));
+        gc.setFill(resources.color(fgRgb));
+        gc.setTextBaseline(VPos.TOP);
+        gc.fillText(new String(Character.toChars(codePoint)), x, y);
+    }
+
+    private void flush() {
+        final int end = slots.count();
+        if (end == pendingFrom) {
+            return;
+        }
+        final PixelReader glyphs = scratch.snapshot(snapshotParams, null).getPixelReader();
+        for (int slot = pendingFrom; slot < end; ++slot) {
+            image.getPixelWriter().setPixels(
+                    slotX(slot), slotY(slot), slotW, slotH, glyphs, slotX(slot - pendingFrom), slotY(slot - pendingFrom));
+        }
+        scratch.getGraphicsContext2D().clearRect(0, 0, scratch.getWidth(), scratch.getHeight());
+        pendingFrom = end;
+    }
+}
@@ -0,0 +1,65 @@
+package rpulp.mouclade;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * The slots of a {@link GlyphAtlas}: which glyph each slot holds, handed out in order.
+ *
+ * A full atlas is not reset while a frame is drawn, the rows drawn earlier in the frame still reference its pixels,
+ * which are only read when the frame is rendered. The glyphs that do not fit get no slot until the next frame starts,
+ * see {@link #beginFrame()}.
+ */
+class GlyphSlots {
+
+    static final int NO_SLOT = -1;
+
+    private final TLongIntHashMap slots = new TLongIntHashMap(1024, 0.5f, -1L, NO_SLOT);
+    private int capacity = 0;
+    private int count = 0;
+    private boolean overflowed = false;
+
+    static long key(int codePoint, int fgRgb, int variant) {
+        return ((long) (variant << 24 | fgRgb) << 32) | (codePoint & 0xffffffffL);
+    }
+
+    void reset(int capacity) {
+        this.capacity = capacity;
+        slots.clear();
+        count = 0;
+        overflowed = false;
+    }
+
+    /**
+     * empties the slots if the previous frame ran out of them
+     *
+     * @return true if the slots were emptied
+     */
+    boolean beginFrame() {
+        if (!overflowed) {
+            return false;
+        }
+        reset(capacity);
+        return true;
+    }
+
+    int count() { return count; }
+
+    /** the slot holding the glyph, NO_SLOT if none */
+    int get(long key) {
+        return slots.get(key);
+    }
+
+    /**
+     * @return a new slot for the glyph, NO_SLOT if all are taken, the glyph must then be drawn without the atlas until
+     * the next frame
+     */
+    int add(long key) {
+        if (count == capacity) {
+            overflowed = true;
+            return NO_SLOT;
+        }
+        final int slot = count++;
+        slots.put(key, slot);
+        return slot;
+    }
+}
@@ -0,0 +1,206 @@
+package rpulp.mouclade;
+
+import java.util.Arrays;
+
+/**
+ * The scrollback as displayed at the current screen width: the soft wrapped rows are joined back into lines, which
+ * are wrapped again at the width.
+ *
+ * The layout is built lazily from the newest row up, only as far as the rows read, so a resize costs nothing however
+ * long the history is, the reads rewrap what they display. The laid out lines are keyed by the ids of their stored
+ * rows, so the output going on does not undo the layout: the lines of the rows pushed since the last read are laid
+ * out and added, the lines of the evicted rows are dropped, the others are kept. Used under the model monitor.
+ */
+class HistoryLayout {
+
+    private final Scrollback scrollback;
+    private int width = 1;
+
+    // the laid out lines, oldest first, in lo..hi-1: the id of the first stored row of the line and the display
+    // position of its first display row. The positions grow toward the newest rows from an arbitrary origin, so the
+    // lines are added at both ends without updating the others.
+    private long[] lineFirstId = new long[64];
+    private long[] linePos = new long[64];
+    private int lo = 32;
+    private int hi = 32;
+    // the id of the newest stored row laid out, and the display position past the newest line
+    private long lastId;
+    private long endPos;
+    // the newest line ends on a soft wrapped row, the next pushed rows go on with it
+    private boolean lastLineOpen;
+    private long laidOutLines = 0;
+
+    // scratch for one stored row
+    private int[] rowCodePoints = new int[0];
+    private int[] rowStyles = new int[0];
+
+    HistoryLayout(Scrollback scrollback) {
+        this.scrollback = scrollback;
+    }
+
+    void setWidth(int width) {
+        if (width != this.width) {
+            this.width = width;
+            lo = hi = lineFirstId.length / 2;
+        }
+    }
+
+    /** number of lines laid out since the creation */
+    long laidOutLines() { return laidOutLines; }
+
+    /**
+     * reads display row k, row 0 being the newest one, just above the screen
+     *
+     * @return false if the history has fewer display rows
+     */
+    boolean readRow(int k, int[] codePoints, int[] styles, int offset) {
+        follow();
+        while (displayRows() <= k) {
+            if (!layoutOlderLine()) {
+                return false;
+            }
+        }
+        final long pos = endPos - 1 - k;
+        final int line = lineAt(pos);
+        final long firstRowId = scrollback.firstRowId();
+        final long lineLastId = line == hi - 1 ? lastId : lineFirstId[line + 1] - 1;
+        copyCells((int) (lineFirstId[line] - firstRowId), (int) (lineLastId - firstRowId),
+                (int) (pos - linePos[line]) * width, codePoints, styles, offset);
+        return true;
+    }
+
+    private long displayRows() {
+        return hi == lo ? 0 : endPos - linePos[lo];
+    }
+
+    /** drops the lines of the evicted rows and lays out the lines of the pushed ones */
+    private void follow() {
+        final long firstRowId = scrollback.firstRowId();
+        while (hi > lo && lineFirstId[lo] < firstRowId) {
+            ++lo;
+        }
+        final long newestId = firstRowId + scrollback.size() - 1;
+        if (hi == lo || newestId == lastId) {
+            return;
+        }
+        if (lastLineOpen) {
+            // the pushed rows go on with the newest line
+            --hi;
+            endPos = linePos[hi];
+            lastId = lineFirstId[hi] - 1;
+            if (hi == lo) {
+                return;
+            }
+        }
+        while (lastId < newestId) {
+            layoutNewerLine(firstRowId, newestId);
+        }
+    }
+
+    /** lays out the line below the ones already laid out */
+    private void layoutNewerLine(long firstRowId, long newestId) {
+        final long firstId = lastId + 1;
+        int row = (int) (firstId - firstRowId);
+        long cells = scrollback.lineLength(row);
+        while (scrollback.isWrapped(row) && firstRowId + row < newestId) {
+            ++row;
+            cells += scrollback.lineLength(row);
+        }
+        if (hi == lineFirstId.length) {
+            recenter();
+        }
+        lineFirstId[hi] = firstId;
+        linePos[hi] = endPos;
+        ++hi;
+        endPos += displayRows(cells);
+        lastId = firstRowId + row;
+        lastLineOpen = scrollback.isWrapped(row);
+        ++laidOutLines;
+    }
+
+    /** lays out the line above the ones already laid out */
+    private boolean layoutOlderLine() {
+        final long firstRowId = scrollback.firstRowId();
+        final int lastRow = hi == lo ? scrollback.size() - 1 : (int) (lineFirstId[lo] - firstRowId) - 1;
+        if (lastRow < 0) {
+            return false;
+        }
+        int firstRow = lastRow;
+        long cells = scrollback.lineLength(lastRow);
+        while (firstRow > 0 && scrollback.isWrapped(firstRow - 1)) {
+            --firstRow;
+            cells += scrollback.lineLength(firstRow);
+        }
+        if (hi == lo) {
+            lastId = firstRowId + lastRow;
+            endPos = 0;
+            lastLineOpen = scrollback.isWrapped(lastRow);
+        }
+        final long pos = (hi == lo ? endPos : linePos[lo]) - displayRows(cells);
+        if (lo == 0) {
+            recenter();
+        }
+        --lo;
+        lineFirstId[lo] = firstRowId + firstRow;
+        linePos[lo] = pos;
+        ++laidOutLines;
+        return true;
+    }
+
+    private long displayRows(long cells) {
+        return Math.max(1, (cells + width - 1) / width);
+    }
+
+    /** moves the lines to the middle of arrays with room for as many lines on both sides */
+    private void recenter() {
+        final int count = hi - lo;
+        final int capacity = Math.max(64, 4 * count);
+        final int newLo = (capacity - count) / 2;
+        final long[] firstIds = new long[capacity];
+        final long[] positions = new long[capacity];
+        System.arraycopy(lineFirstId, lo, firstIds, newLo, count);
+        System.arraycopy(linePos, lo, positions, newLo, count);
+        lineFirstId = firstIds;
+        linePos = positions;
+        lo = newLo;
+        hi = newLo + count;
+    }
+
+    /** the laid out line holding the display position */
+    private int lineAt(long pos) {
+        int low = lo;
+        int high = hi - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (linePos[mid] <= pos) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /** copies the cells from..from+width of the line made of the stored rows firstRow..lastRow */
+    private void copyCells(int firstRow, int lastRow, int from, int[] codePoints, int[] styles, int offset) {
+        Arrays.fill(codePoints, offset, offset + width, ' ');
+        Arrays.fill(styles, offset, offset + width, StyleTable.DEFAULT);
+        final int to = from + width;
+        int pos = 0;
+        for (int row = firstRow; row <= lastRow && pos < to; ++row) {
+            final int len = scrollback.lineLength(row);
+            final int beg = Math.max(pos, from);
+            final int end = Math.min(pos + len, to);
+            if (beg < end) {
+                if (rowCodePoints.length < len) {
+                    rowCodePoints = new int[len];
+                    rowStyles = new int[len];
+                }
+                scrollback.readLine(row, rowCodePoints, rowStyles, 0, len);
+                System.arraycopy(rowCodePoints, beg - pos, codePoints, offset + beg - from, end - beg);
+                System.arraycopy(rowStyles, beg - pos, styles, offset + beg - from, end - beg);
+            }
+            pos += len;
+        }
+    }
+}
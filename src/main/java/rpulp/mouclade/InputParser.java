@@ -5,6 +5,8 @@ class InputParser {
     interface Listener {
         void handleOsc(int param, byte[] text, int offset, int len);
         void addChar(int byt);
+        /** a run of printable code points, no control codes */
+        void addChars(int[] codePoints, int off, int len);
         void cursorUp(int n);
         void cursorDown(int n);
         void cursorForward(int n);
@@ -17,169 +19,293 @@ class InputParser {
         void eraseInLine(int n);
         void scrollUp(int n);
         void scrollDown(int n);
-        void selectGfxRendition(int n);
+        /** DECSTBM, 1 based inclusive rows, bottom is 0 for the last row */
+        void setScrollRegion(int top, int bottom);
+        void insertLines(int n);
+        void deleteLines(int n);
+        /** moves the caret up, scrolling the region down at its top */
+        void reverseIndex();
+        /** all the parameters of the sequence, missing ones are 0 */
+        void selectGfxRendition(int[] params, int count);
         void auxPort(int n);
         void saveCursorPos();
         void restoreCursorPos();
         void hideCursor();
         void showCursor();
+        /** DECSET / DECRST of the private modes but the cursor visibility */
+        void setPrivateMode(int mode, boolean enabled);
+        /** DECKPAM (ESC =) / DECKPNM (ESC >) */
+        void setKeypadMode(boolean application);
     }
 
-    private interface Edges {
-        State next(int byt);
+    // parser states, see Paul Williams' "A parser for DEC's ANSI-compatible video terminals"
+    private static final int GROUND = 0;
+    private static final int ESCAPE = 1;
+    private static final int ESCAPE_INTERMEDIATE = 2;
+    private static final int CSI_ENTRY = 3;
+    private static final int CSI_PARAM = 4;
+    private static final int CSI_INTERMEDIATE = 5;
+    private static final int CSI_IGNORE = 6;
+    private static final int DCS_ENTRY = 7;
+    private static final int DCS_PARAM = 8;
+    private static final int DCS_INTERMEDIATE = 9;
+    private static final int DCS_PASSTHROUGH = 10;
+    private static final int DCS_IGNORE = 11;
+    private static final int OSC_STRING = 12;
+    private static final int SOS_PM_APC_STRING = 13;
+    private static final int STATE_COUNT = 14;
+
+    // actions run on a transition
+    private static final int NONE = 0;
+    private static final int PRINT = 1;
+    private static final int EXECUTE = 2;
+    private static final int COLLECT = 3;
+    private static final int PARAM = 4;
+    private static final int ESC_DISPATCH = 5;
+    private static final int CSI_DISPATCH = 6;
+    private static final int OSC_PUT = 7;
+
+    /**
+     * transitions indexed by (state << 8 | byte), each entry is (action << 4 | next state)
+     *
+     * 8 bit C1 controls are not recognized, bytes 0x80-0xff are part of UTF-8 sequences and are printed.
+     */
+    private static final byte[] TRANSITIONS = buildTransitions();
+
+    private static byte[] buildTransitions() {
+        final byte[] table = new byte[STATE_COUNT << 8];
+        for (int state = 0; state < STATE_COUNT; ++state) {
+            // by default a state ignores everything, C0 controls are executed on the fly
+            on(table, state, 0x00, 0xff, NONE, state);
+            on(table, state, 0x00, 0x17, EXECUTE, state);
+            on(table, state, 0x19, 0x19, EXECUTE, state);
+            on(table, state, 0x1c, 0x1f, EXECUTE, state);
+            // anywhere
+            on(table, state, 0x18, 0x18, EXECUTE, GROUND);
+            on(table, state, 0x1a, 0x1a, EXECUTE, GROUND);
+            on(table, state, 0x1b, 0x1b, NONE, ESCAPE);
+        }
+
+        on(table, GROUND, 0x20, 0x7e, PRINT, GROUND);
+        on(table, GROUND, 0x80, 0xff, PRINT, GROUND);
+
+        on(table, ESCAPE, 0x20, 0x2f, COLLECT, ESCAPE_INTERMEDIATE);
+        on(table, ESCAPE, 0x30, 0x7e, ESC_DISPATCH, GROUND);
+        on(table, ESCAPE, 'P', 'P', NONE, DCS_ENTRY);
+        on(table, ESCAPE, 'X', 'X', NONE, SOS_PM_APC_STRING);
+        on(table, ESCAPE, '[', '[', NONE, CSI_ENTRY);
+        on(table, ESCAPE, ']', ']', NONE, OSC_STRING);
+        on(table, ESCAPE, '^', '_', NONE, SOS_PM_APC_STRING);
+
+        on(table, ESCAPE_INTERMEDIATE, 0x20, 0x2f, COLLECT, ESCAPE_INTERMEDIATE);
+        on(table, ESCAPE_INTERMEDIATE, 0x30, 0x7e, ESC_DISPATCH, GROUND);
+
+        on(table, CSI_ENTRY, 0x20, 0x2f, COLLECT, CSI_INTERMEDIATE);
+        on(table, CSI_ENTRY, 0x30, 0x39, PARAM, CSI_PARAM);
+        on(table, CSI_ENTRY, ':', ':', NONE, CSI_IGNORE);
+        on(table, CSI_ENTRY, ';', ';', PARAM, CSI_PARAM);
+        on(table, CSI_ENTRY, 0x3c, 0x3f, COLLECT, CSI_PARAM);
+        on(table, CSI_ENTRY, 0x40, 0x7e, CSI_DISPATCH, GROUND);
+
+        on(table, CSI_PARAM, 0x20, 0x2f, COLLECT, CSI_INTERMEDIATE);
+        on(table, CSI_PARAM, 0x30, 0x39, PARAM, CSI_PARAM);
+        on(table, CSI_PARAM, ':', ':', NONE, CSI_IGNORE);
+        on(table, CSI_PARAM, ';', ';', PARAM, CSI_PARAM);
+        on(table, CSI_PARAM, 0x3c, 0x3f, NONE, CSI_IGNORE);
+        on(table, CSI_PARAM, 0x40, 0x7e, CSI_DISPATCH, GROUND);
+
+        on(table, CSI_INTERMEDIATE, 0x20, 0x2f, COLLECT, CSI_INTERMEDIATE);
+        on(table, CSI_INTERMEDIATE, 0x30, 0x3f, NONE, CSI_IGNORE);
+        on(table, CSI_INTERMEDIATE, 0x40, 0x7e, CSI_DISPATCH, GROUND);
+
+        on(table, CSI_IGNORE, 0x40, 0x7e, NONE, GROUND);
+
+        // device control strings are parsed then dropped
+        on(table, DCS_ENTRY, 0x00, 0x1f, NONE, DCS_ENTRY);
+        on(table, DCS_ENTRY, 0x20, 0x2f, COLLECT, DCS_INTERMEDIATE);
+        on(table, DCS_ENTRY, 0x30, 0x39, PARAM, DCS_PARAM);
+        on(table, DCS_ENTRY, ':', ':', NONE, DCS_IGNORE);
+        on(table, DCS_ENTRY, ';', ';', PARAM, DCS_PARAM);
+        on(table, DCS_ENTRY, 0x3c, 0x3f, COLLECT, DCS_PARAM);
+        on(table, DCS_ENTRY, 0x40, 0x7e, NONE, DCS_PASSTHROUGH);
+
+        on(table, DCS_PARAM, 0x00, 0x1f, NONE, DCS_PARAM);
+        on(table, DCS_PARAM, 0x20, 0x2f, COLLECT, DCS_INTERMEDIATE);
+        on(table, DCS_PARAM, 0x30, 0x39, PARAM, DCS_PARAM);
+        on(table, DCS_PARAM, ':', ':', NONE, DCS_IGNORE);
+        on(table, DCS_PARAM, ';', ';', PARAM, DCS_PARAM);
+        on(table, DCS_PARAM, 0x3c, 0x3f, NONE, DCS_IGNORE);
+        on(table, DCS_PARAM, 0x40, 0x7e, NONE, DCS_PASSTHROUGH);
+
+        on(table, DCS_INTERMEDIATE, 0x00, 0x1f, NONE, DCS_INTERMEDIATE);
+        on(table, DCS_INTERMEDIATE, 0x20, 0x2f, COLLECT, DCS_INTERMEDIATE);
+        on(table, DCS_INTERMEDIATE, 0x30, 0x3f, NONE, DCS_IGNORE);
+        on(table, DCS_INTERMEDIATE, 0x40, 0x7e, NONE, DCS_PASSTHROUGH);
+
+        on(table, DCS_PASSTHROUGH, 0x00, 0x1f, NONE, DCS_PASSTHROUGH);
+        on(table, DCS_IGNORE, 0x00, 0x1f, NONE, DCS_IGNORE);
+        on(table, SOS_PM_APC_STRING, 0x00, 0x1f, NONE, SOS_PM_APC_STRING);
+
+        on(table, OSC_STRING, 0x00, 0x1f, NONE, OSC_STRING);
+        on(table, OSC_STRING, 0x07, 0x07, NONE, GROUND); // xterm accepts BEL as terminator
+        on(table, OSC_STRING, 0x20, 0xff, OSC_PUT, OSC_STRING);
+
+        // re-apply the anywhere transitions overridden above
+        for (int state = 0; state < STATE_COUNT; ++state) {
+            on(table, state, 0x18, 0x18, EXECUTE, GROUND);
+            on(table, state, 0x1a, 0x1a, EXECUTE, GROUND);
+            on(table, state, 0x1b, 0x1b, NONE, ESCAPE);
+        }
+        return table;
     }
 
-    private static class State {
-        Edges edges;
+    private static void on(byte[] table, int state, int from, int to, int action, int next) {
+        for (int byt = from; byt <= to; ++byt) {
+            table[(state << 8) | byt] = (byte) ((action << 4) | next);
+        }
     }
 
     private static final int NOT_A_NUMBER = -1;
+    private static final int MAX_NUMERIC_VALUE = 99999;
     private int numericValue = NOT_A_NUMBER;
-    private int[] numericParams = new int[16];
+    private final int[] numericParams = new int[16];
     private int numericParamsSize = 0;
+    private int intermediates = 0;
     private byte[] textParam = new byte[128];
     private int textParamSize = 0;
 
-    private byte[] bytes;
-    private int idx;
-    private int end;
+    // UTF-8 decoding, a sequence may be split across parse() calls
+    private static final int REPLACEMENT_CHAR = 0xfffd;
+    private int utf8CodePoint = 0;
+    private int utf8Remaining = 0;
+    private int utf8Min = 0; // smallest code point of the sequence length, smaller ones are overlong forms
+    private final int[] decoded = new int[1024];
 
     private final Listener model;
 
-    private final State initialState;
-    private State state;
+    private int state = GROUND;
 
     InputParser(Listener listener) {
         this.model = listener;
-        this.initialState = buildParserGraph();
-        this.state = this.initialState;
     }
 
-    private State buildParserGraph() {
-        // vertices
-        final State top = new State();
-        final State esc = new State();
-        final State csiBegin = new State();
-        final State csiNumericParam = new State();
-        final State csiEnd = new State();
-        final State oscBegin = new State();
-        final State oscNumericParam = new State();
-        final State oscTextParam = new State();
-        final State oscEnd = new State();
-
-        // edges
-        top.edges = (int byt) -> {
-            switch (byt) {
-                case 0x1b: return esc;
-                default: addChar(byt); return top;
-            }
-        };
-        esc.edges = (int byt) -> {
-            switch (byt) {
-                case ']': clearParams(); return oscBegin;
-                case '[': clearParams(); return csiBegin;
-                default: return top;
-            }
-        };
-        csiBegin.edges = (int byt) -> {
-            switch (byt) {
-                case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
-                    rewind(); return csiNumericParam;
-                default: rewind(); return csiEnd;
-            }
-        };
-        csiNumericParam.edges = (int byt) -> {
-            switch (byt) {
-                case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
-                    addNumDigit(byt); return csiNumericParam;
-                case ';': addNumParam(); return csiNumericParam;
-                default: addNumParam(); rewind(); return csiEnd;
-            }
-        };
-        csiEnd.edges = (int byt) -> {
-            switch (byt) {
-                case 'A': cursorUp(); break;
-                case 'B': cursorDown(); break;
-                case 'C': cursorForward(); break;
-                case 'D': cursorBack(); break;
-                case 'E': cursorNextLine(); break;
-                case 'F': cursorPreviousLine(); break;
-                case 'G': cursorHorizontalAbsolute(); break;
-                case 'H': cursorPosition(); break;
-                case 'J': eraseDisplay(); break;
-                case 'K': eraseInLine(); break;
-                case 'S': scrollUp(); break;
-                case 'T': scrollDown(); break;
-                case 'f': cursorPosition(); break;
-                case 'm': selectGfxRendition(); break;
-                case 'i': auxPort(); break;
-                case 'n': deviceStatusReport(); break;
-                case 's': saveCursorPos(); break;
-                case 'u': restoreCursorPos(); break;
-                case 'l': hideCursor(); break;
-                case 'h': showCursor(); break;
-            }
-            return top;
-        };
-        oscBegin.edges = (int byt) -> {
-            switch (byt) {
-                case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
-                    rewind(); return oscNumericParam;
-                default: rewind(); return oscTextParam;
-            }
-        };
-        oscNumericParam.edges = (int byt) -> {
-            switch (byt) {
-                case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
-                    addNumDigit(byt); return oscNumericParam;
-                case ';': addNumParam(); return oscTextParam;
-                default: addNumParam(); rewind(); return oscTextParam;
+    void parse(byte[] bytes) { parse(bytes, 0, bytes.length); }
+
+    void parse(byte[] bytes, int off, int len) {
+        final byte[] transitions = TRANSITIONS;
+        final int end = off + len;
+        int idx = off;
+        while (idx < end) {
+            if (state == GROUND) {
+                // fast path: scan the run of printable bytes
+                int runEnd = idx;
+                while (runEnd < end && (transitions[bytes[runEnd] & 0xff] & 0xf0) == (PRINT << 4)) {
+                    ++runEnd;
+                }
+                if (runEnd > idx) {
+                    print(bytes, idx, runEnd - idx);
+                    idx = runEnd;
+                    continue;
+                }
             }
-        };
-        oscTextParam.edges = (int byt) -> {
-            switch (byt) {
-                case 0x07: handleOsc(); return top;
-                case 0x1b: handleOsc(); return oscEnd;
-                default: addTextParamByte(byt); return oscTextParam;
+            if (utf8Remaining != 0) {
+                // a control interrupts the sequence
+                utf8Remaining = 0;
+                decoded[0] = REPLACEMENT_CHAR;
+                model.addChars(decoded, 0, 1);
             }
-        };
-        oscEnd.edges = (int byt) -> {
-            switch (byt) {
-                case '\\': return top;
-                default: return top;
+            final int byt = bytes[idx++] & 0xff;
+            final int transition = transitions[(state << 8) | byt] & 0xff;
+            final int next = transition & 0x0f;
+            if (next != state) {
+                exitState(state);
+                state = next;
+                enterState(next);
             }
-        };
-        return top;
+            doAction(transition >> 4, byt);
+        }
     }
 
-    void parse(byte[] bytes) { parse(bytes, 0, bytes.length); }
+    private void exitState(int state) {
+        // an OSC ends with BEL or ST (ESC \\), either way it leaves the OSC_STRING state
+        if (state == OSC_STRING) {
+            handleOsc();
+        }
+    }
 
-    void parse(byte[] bytes, int off, int len) {
-        this.bytes = bytes;
-        this.idx = off;
-        this.end = off + len;
-
-        for (;;) {
-            int byt = nextByte();
-            if (byt == -1) {
-                return;
-            }
-            state = state.edges.next(byt);
+    private void enterState(int state) {
+        switch (state) {
+            case ESCAPE:
+            case CSI_ENTRY:
+            case DCS_ENTRY:
+            case OSC_STRING:
+                clearParams();
+                break;
         }
     }
 
-    private byte nextByte() {
-        if (idx >= end) {
-            return -1;
+    private void doAction(int action, int byt) {
+        switch (action) {
+            case NONE: break;
+            case EXECUTE: addChar(byt); break;
+            case COLLECT: intermediates = (intermediates << 8) | byt; break;
+            case PARAM: addParamByte(byt); break;
+            case ESC_DISPATCH: escDispatch(byt); break;
+            case CSI_DISPATCH: addNumParam(); csiDispatch(byt); break;
+            case OSC_PUT: addTextParamByte(byt); break;
+            default: throw new IllegalStateException("unexpected action " + action);
         }
-        return bytes[idx++];
     }
 
-    private void rewind() { --idx; }
+    private void escDispatch(int byt) {
+        if (intermediates != 0) {
+            return; // character set designations and the like, ignored
+        }
+        switch (byt) {
+            case '7': saveCursorPos(); break;
+            case '8': restoreCursorPos(); break;
+            case 'M': reverseIndex(); break;
+            case '=': model.setKeypadMode(true); break;
+            case '>': model.setKeypadMode(false); break;
+        }
+    }
+
+    private void csiDispatch(int byt) {
+        if (intermediates != 0) {
+            if (intermediates == '?' && (byt == 'h' || byt == 'l')) {
+                setPrivateModes(byt == 'h');
+            }
+            return; // other private and intermediate sequences are ignored
+        }
+        switch (byt) {
+            case 'A': cursorUp(); break;
+            case 'B': cursorDown(); break;
+            case 'C': cursorForward(); break;
+            case 'D': cursorBack(); break;
+            case 'E': cursorNextLine(); break;
+            case 'F': cursorPreviousLine(); break;
+            case 'G': cursorHorizontalAbsolute(); break;
+            case 'H': cursorPosition(); break;
+            case 'J': eraseDisplay(); break;
+            case 'K': eraseInLine(); break;
+            case 'L': insertLines(); break;
+            case 'M': deleteLines(); break;
+            case 'S': scrollUp(); break;
+            case 'T': scrollDown(); break;
+            case 'f': cursorPosition(); break;
+            case 'r': setScrollRegion(); break;
+            case 'm': selectGfxRendition(); break;
+            case 'i': auxPort(); break;
+            case 'n': deviceStatusReport(); break;
+            case 's': saveCursorPos(); break;
+            case 'u': restoreCursorPos(); break;
+        }
+    }
 
     private void clearParams() {
         numericParamsSize = 0;
         resetNumValue();
+        intermediates = 0;
         textParamSize = 0;
     }
 
@@ -187,12 +313,19 @@ class InputParser {
         numericValue = NOT_A_NUMBER;
     }
 
-    private void addNumDigit(int digitChar) {
-        numericValue = (Math.max(numericValue, 0) * 10) + (digitChar - '0');
+    private void addParamByte(int byt) {
+        if (byt == ';') {
+            addNumParam();
+        } else {
+            numericValue = Math.min((Math.max(numericValue, 0) * 10) + (byt - '0'), MAX_NUMERIC_VALUE);
+        }
     }
 
     private void addNumParam() {
-        numericParams[numericParamsSize++] = numericValue;
+        // extra parameters are dropped
+        if (numericParamsSize < numericParams.length) {
+            numericParams[numericParamsSize++] = numericValue;
+        }
         resetNumValue();
     }
 
@@ -222,11 +355,84 @@ class InputParser {
         return numericParam(1, defaultValue);
     }
 
-    private void handleOsc() { model.handleOsc(numericParam0(1), textParam, 0, textParamSize); }
+    private void handleOsc() {
+        // "<number>;<text>"
+        int param = NOT_A_NUMBER;
+        int idx = 0;
+        while (idx < textParamSize && textParam[idx] >= '0' && textParam[idx] <= '9') {
+            param = Math.min((Math.max(param, 0) * 10) + (textParam[idx++] - '0'), MAX_NUMERIC_VALUE);
+        }
+        if (idx < textParamSize && textParam[idx] == ';') {
+            ++idx;
+        }
+        model.handleOsc(param == NOT_A_NUMBER ? 1 : param, textParam, idx, textParamSize - idx);
+    }
 
-    private void addChar(int byt) { model.addChar(byt); }
+    private void print(byte[] bytes, int off, int len) {
+        final int[] decoded = this.decoded;
+        final int end = off + len;
+        int size = 0;
+        for (int idx = off; idx < end; ++idx) {
+            final int byt = bytes[idx];
+            if (byt >= 0 && utf8Remaining == 0) {
+                decoded[size++] = byt;
+            } else {
+                size = decodeUtf8(byt & 0xff, decoded, size);
+            }
+            if (size >= decoded.length - 1) {
+                model.addChars(decoded, 0, size);
+                size = 0;
+            }
+        }
+        if (size > 0) {
+            model.addChars(decoded, 0, size);
+        }
+    }
+
+    /**
+     * feeds a non ASCII byte, or any byte in the middle of a sequence, to the UTF-8 decoder
+     *
+     * @return the new size of decoded, it grows by 2 at most
+     */
+    private int decodeUtf8(int byt, int[] decoded, int size) {
+        if (utf8Remaining != 0) {
+            if ((byt & 0xc0) == 0x80) {
+                utf8CodePoint = (utf8CodePoint << 6) | (byt & 0x3f);
+                if (--utf8Remaining == 0) {
+                    decoded[size++] = isValidCodePoint(utf8CodePoint, utf8Min) ? utf8CodePoint : REPLACEMENT_CHAR;
+                }
+                return size;
+            }
+            // truncated sequence, the byte starts something new
+            utf8Remaining = 0;
+            decoded[size++] = REPLACEMENT_CHAR;
+        }
+        if (byt < 0x80) {
+            decoded[size++] = byt;
+        } else if ((byt & 0xe0) == 0xc0) {
+            startUtf8(byt & 0x1f, 1, 0x80);
+        } else if ((byt & 0xf0) == 0xe0) {
+            startUtf8(byt & 0x0f, 2, 0x800);
+        } else if ((byt & 0xf8) == 0xf0) {
+            startUtf8(byt & 0x07, 3, 0x10000);
+        } else {
+            decoded[size++] = REPLACEMENT_CHAR; // stray continuation byte or invalid lead byte
+        }
+        return size;
+    }
+
+    private void startUtf8(int bits, int remaining, int min) {
+        utf8CodePoint = bits;
+        utf8Remaining = remaining;
+        utf8Min = min;
+    }
+
+    private static boolean isValidCodePoint(int codePoint, int min) {
+        return codePoint >= min && codePoint <= Character.MAX_CODE_POINT
+                && (codePoint < Character.MIN_SURROGATE || codePoint > Character.MAX_SURROGATE);
+    }
 
-    private void resetToInitialState() { }
+    private void addChar(int byt) { model.addChar(byt); }
 
     private void cursorUp() { model.cursorUp(numericParam0(1)); }
 
@@ -252,7 +458,22 @@ class InputParser {
 
     private void scrollDown() { model.scrollDown(numericParam0(1)); }
 
-    private void selectGfxRendition() { model.selectGfxRendition(numericParam0(0)); }
+    private void setScrollRegion() { model.setScrollRegion(numericParam0(1), numericParam1(0)); }
+
+    private void insertLines() { model.insertLines(numericParam0(1)); }
+
+    private void deleteLines() { model.deleteLines(numericParam0(1)); }
+
+    private void reverseIndex() { model.reverseIndex(); }
+
+    private void selectGfxRendition() {
+        for (int ii = 0; ii < numericParamsSize; ++ii) {
+            if (numericParams[ii] == NOT_A_NUMBER) {
+                numericParams[ii] = 0;
+            }
+        }
+        model.selectGfxRendition(numericParams, numericParamsSize);
+    }
 
     private void auxPort() { model.auxPort(numericParam0(0)); }
 
@@ -262,7 +483,18 @@ class InputParser {
 
     private void restoreCursorPos() { model.restoreCursorPos(); }
 
-    private void hideCursor() { model.hideCursor(); }
-
-    private void showCursor() { model.showCursor(); }
+    private void setPrivateModes(boolean enabled) {
+        for (int ii = 0; ii < numericParamsSize; ++ii) {
+            final int mode = numericParams[ii];
+            if (mode == 25) {
+                if (enabled) {
+                    model.showCursor();
+                } else {
+                    model.hideCursor();
+                }
+            } else if (mode != NOT_A_NUMBER) {
+                model.setPrivateMode(mode, enabled);
+            }
+        }
+    }
 }
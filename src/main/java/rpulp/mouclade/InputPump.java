@@ -0,0 +1,173 @@
+package rpulp.mouclade;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds the bytes read from the process streams to the parser of one session, on an executor shared by the sessions.
+ *
+ * Each stream gets its own {@link ByteRing}, the reader threads only copy bytes into it and never wait for the model.
+ * The pump parses under the model monitor, which is also held by the FX thread while it drains the damage and reads
+ * the cells. A pump task parses at most one chunk per stream, then queues itself behind the other sessions if bytes
+ * are left, so a flooding session only gets its turn of the executor threads. At most one task of a pump is queued or
+ * running at a time, the parser is never used by two threads at once.
+ */
+class InputPump implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InputPump.class);
+
+    private static final int RING_CAPACITY = 256 * 1024;
+    private static final int PARSE_CHUNK = 64 * 1024;
+
+    /**
+     * producer side of a ring, to be used by one reader thread
+     */
+    class Stream implements Proc.InputListener {
+        private final ByteRing ring = new ByteRing(RING_CAPACITY);
+        private volatile Thread waitingProducer;
+        private volatile boolean ended = false;
+
+        @Override
+        public void onInput(byte[] bytes, int len) {
+            int off = 0;
+            while (off < len) {
+                final int count = ring.offer(bytes, off, len - off);
+                if (count > 0) {
+                    off += count;
+                    schedule();
+                } else if (!closed) {
+                    waitForSpace();
+                } else {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void onEnd() {
+            ended = true;
+            schedule();
+        }
+
+        private void waitForSpace() {
+            waitingProducer = Thread.currentThread();
+            if (ring.size() == ring.capacity() && !closed) {
+                LockSupport.park(this);
+            }
+            waitingProducer = null;
+        }
+
+        private void wakeUpProducer() {
+            Thread producer = waitingProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+    }
+
+    private final InputParser parser;
+    private final Object modelLock;
+    private final Executor executor;
+    private final CopyOnWriteArrayList<Stream> streams = new CopyOnWriteArrayList<>();
+    private final byte[] chunk = new byte[PARSE_CHUNK];
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private final Runnable onEnd;
+    private volatile boolean closed = false;
+
+    /**
+     * @param onEnd run once all the streams ended and their bytes were parsed
+     */
+    InputPump(InputParser parser, TerminalModel model, Executor executor, Runnable onEnd) {
+        this.parser = parser;
+        this.modelLock = model;
+        this.executor = executor;
+        this.onEnd = onEnd;
+    }
+
+    Stream newStream() {
+        Stream stream = new Stream();
+        streams.add(stream);
+        return stream;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Stream stream : streams) {
+            stream.wakeUpProducer();
+        }
+    }
+
+    /** queues a pump task unless one is already queued or running */
+    private void schedule() {
+        if (!closed && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::run);
+            } catch (RejectedExecutionException ex) {
+                LOGGER.warn("InputPump rejected, closing " + ex);
+                scheduled.set(false);
+                close();
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            if (!closed) {
+                pumpOnce();
+            }
+        } catch (Exception ex) {
+            LOGGER.error("InputPump died " + ex, ex);
+            close();
+        }
+        scheduled.set(false);
+        // bytes offered while this task ran did not schedule a new one
+        if (!closed) {
+            if (hasInput()) {
+                schedule();
+            } else if (hasEnded() && ended.compareAndSet(false, true)) {
+                closed = true;
+                LOGGER.info("InputPump ended");
+                onEnd.run();
+            }
+        }
+    }
+
+    /** parses one chunk of each stream */
+    private void pumpOnce() {
+        for (Stream stream : streams) {
+            final int len = stream.ring.poll(chunk, 0, chunk.length);
+            if (len > 0) {
+                stream.wakeUpProducer();
+                synchronized (modelLock) {
+                    parser.parse(chunk, 0, len);
+                }
+            }
+        }
+    }
+
+    private boolean hasInput() {
+        for (Stream stream : streams) {
+            if (!stream.ring.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasEnded() {
+        for (Stream stream : streams) {
+            if (!stream.ended) {
+                return false;
+            }
+        }
+        return !streams.isEmpty();
+    }
+}
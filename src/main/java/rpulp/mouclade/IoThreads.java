@@ -0,0 +1,91 @@
+package rpulp.mouclade;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts the threads doing blocking I/O: virtual threads when configured and the JDK has them, daemon platform threads
+ * otherwise, see {@link Config#IO_THREADS}.
+ *
+ * Virtual threads are created through reflection since the sources target Java 8. They do not make the blocking I/O
+ * cheaper: a read of a process pipe (a FileInputStream) pins its carrier thread, and the scheduler compensates by
+ * adding a platform thread for the duration of the read. The same goes for the writes and resizes of the pty: they
+ * write to the helper's stdin pipe, under the monitor of the PtyInput of {@link Proc}. Each blocked reader or writer
+ * still holds a platform thread, the option only moves these threads into the scheduler pool, which is bounded by
+ * jdk.virtualThreadScheduler.maxPoolSize (256 by default): past that, the blocked threads delay the others.
+ */
+final class IoThreads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IoThreads.class);
+
+    // initialized on first use
+    private static class Configured {
+        static final ThreadFactory FACTORY = factory(Config.IO_THREADS);
+    }
+
+    private IoThreads() {}
+
+    /** the factory of {@link Config#IO_THREADS} */
+    static ThreadFactory configured() { return Configured.FACTORY; }
+
+    static Thread start(String name, Runnable runnable) { return start(configured(), name, runnable); }
+
+    static Thread start(ThreadFactory factory, String name, Runnable runnable) {
+        Thread thread = factory.newThread(runnable);
+        thread.setName(name);
+        thread.start();
+        return thread;
+    }
+
+    /** a cached pool of the factory threads, named name-n, an idle thread ends after a minute */
+    static ExecutorService executor(ThreadFactory factory, String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = factory.newThread(runnable);
+            thread.setName(name + "-" + count.incrementAndGet());
+            return thread;
+        });
+    }
+
+    static ThreadFactory factory(String kind) {
+        switch (kind) {
+            case "platform":
+                return new PlatformFactory();
+            case "virtual":
+                ThreadFactory virtual = virtualFactory();
+                if (virtual != null) {
+                    LOGGER.info("I/O on virtual threads");
+                    return virtual;
+                }
+                LOGGER.warn("no virtual threads in java " + System.getProperty("java.version") + ", I/O on platform threads");
+                return new PlatformFactory();
+            default:
+                throw new IllegalArgumentException("unknown I/O threads " + kind);
+        }
+    }
+
+    /** Thread.ofVirtual().factory(), null before java 21 */
+    private static ThreadFactory virtualFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOGGER.debug("no virtual threads " + ex);
+            return null;
+        }
+    }
+
+    private static class PlatformFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
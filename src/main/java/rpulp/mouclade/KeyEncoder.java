@@ -0,0 +1,179 @@
+package rpulp.mouclade;
+
+import com.google.common.base.Charsets;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+
+import java.util.EnumMap;
+
+/**
+ * The bytes xterm sends for the keys, built once per key and modifier combination so encoding a key is a lookup.
+ *
+ * The pressed events give the keys without a character: the cursor and editing keys, the function keys, Enter, Tab,
+ * Backspace and Escape, and the keypad in application mode. The other keys are encoded from their typed events, Alt
+ * prefixes them with ESC. A modified key sends the xterm parameter 1 + modifier bits, e.g. CSI 1;5A for Ctrl+Up.
+ */
+class KeyEncoder {
+
+    // modifier bits
+    static final int SHIFT = 1;
+    static final int ALT = 2;
+    static final int CTRL = 4;
+    static final int META = 8;
+    private static final int COMBINATIONS = 16;
+
+    private static final String CSI = "\u001b[";
+    private static final String SS3 = "\u001bO";
+
+    private final EnumMap<KeyCode, byte[][]> normal = new EnumMap<>(KeyCode.class);
+    private final EnumMap<KeyCode, byte[]> applicationCursor = new EnumMap<>(KeyCode.class);
+    private final EnumMap<KeyCode, byte[]> applicationKeypad = new EnumMap<>(KeyCode.class);
+    // the typed ASCII characters, then the same prefixed by ESC
+    private final byte[][] ascii = new byte[2 * 128][];
+
+    KeyEncoder() {
+        cursorKey(KeyCode.UP, 'A');
+        cursorKey(KeyCode.DOWN, 'B');
+        cursorKey(KeyCode.RIGHT, 'C');
+        cursorKey(KeyCode.LEFT, 'D');
+        cursorKey(KeyCode.KP_UP, 'A');
+        cursorKey(KeyCode.KP_DOWN, 'B');
+        cursorKey(KeyCode.KP_RIGHT, 'C');
+        cursorKey(KeyCode.KP_LEFT, 'D');
+        cursorKey(KeyCode.HOME, 'H');
+        cursorKey(KeyCode.END, 'F');
+
+        tildeKey(KeyCode.INSERT, 2);
+        tildeKey(KeyCode.DELETE, 3);
+        tildeKey(KeyCode.PAGE_UP, 5);
+        tildeKey(KeyCode.PAGE_DOWN, 6);
+        tildeKey(KeyCode.F5, 15);
+        tildeKey(KeyCode.F6, 17);
+        tildeKey(KeyCode.F7, 18);
+        tildeKey(KeyCode.F8, 19);
+        tildeKey(KeyCode.F9, 20);
+        tildeKey(KeyCode.F10, 21);
+        tildeKey(KeyCode.F11, 23);
+        tildeKey(KeyCode.F12, 24);
+
+        functionKey(KeyCode.F1, 'P');
+        functionKey(KeyCode.F2, 'Q');
+        functionKey(KeyCode.F3, 'R');
+        functionKey(KeyCode.F4, 'S');
+
+        controlKey(KeyCode.ENTER, "\r", "\r", "\r");
+        controlKey(KeyCode.TAB, "\t", "\t", CSI + "Z");
+        controlKey(KeyCode.BACK_SPACE, "\u007f", "\b", "\u007f");
+        controlKey(KeyCode.ESCAPE, "\u001b", "\u001b", "\u001b");
+
+        final KeyCode[] digits = {
+                KeyCode.NUMPAD0, KeyCode.NUMPAD1, KeyCode.NUMPAD2, KeyCode.NUMPAD3, KeyCode.NUMPAD4,
+                KeyCode.NUMPAD5, KeyCode.NUMPAD6, KeyCode.NUMPAD7, KeyCode.NUMPAD8, KeyCode.NUMPAD9
+        };
+        for (int ii = 0; ii < digits.length; ++ii) {
+            applicationKeypad.put(digits[ii], bytes(SS3 + (char) ('p' + ii)));
+        }
+        applicationKeypad.put(KeyCode.MULTIPLY, bytes(SS3 + 'j'));
+        applicationKeypad.put(KeyCode.ADD, bytes(SS3 + 'k'));
+        applicationKeypad.put(KeyCode.SEPARATOR, bytes(SS3 + 'l'));
+        applicationKeypad.put(KeyCode.SUBTRACT, bytes(SS3 + 'm'));
+        applicationKeypad.put(KeyCode.DECIMAL, bytes(SS3 + 'n'));
+        applicationKeypad.put(KeyCode.DIVIDE, bytes(SS3 + 'o'));
+
+        for (int ch = 0; ch < 128; ++ch) {
+            ascii[ch] = new byte[] {(byte) ch};
+            ascii[128 + ch] = new byte[] {0x1b, (byte) ch};
+        }
+    }
+
+    static int modifiers(KeyEvent evt) {
+        return (evt.isShiftDown() ? SHIFT : 0)
+                | (evt.isAltDown() ? ALT : 0)
+                | (evt.isControlDown() ? CTRL : 0)
+                | (evt.isMetaDown() ? META : 0);
+    }
+
+    /**
+     * @return the bytes of a pressed key, null if the key is encoded from its typed event
+     */
+    byte[] pressed(KeyCode code, int modifiers, boolean applicationCursorMode, boolean applicationKeypadMode) {
+        if (modifiers == 0) {
+            if (applicationCursorMode) {
+                final byte[] bytes = applicationCursor.get(code);
+                if (bytes != null) {
+                    return bytes;
+                }
+            }
+            if (applicationKeypadMode) {
+                final byte[] bytes = applicationKeypad.get(code);
+                if (bytes != null) {
+                    return bytes;
+                }
+            }
+        }
+        final byte[][] combinations = normal.get(code);
+        return combinations == null ? null : combinations[modifiers];
+    }
+
+    /**
+     * @return the bytes of a typed character, null if there are none
+     */
+    byte[] typed(String character, int modifiers) {
+        if (character.isEmpty()) {
+            return null;
+        }
+        // Ctrl+Alt is also AltGr, its characters are not prefixed
+        final boolean escPrefix = (modifiers & (ALT | CTRL)) == ALT;
+        final char ch = character.charAt(0);
+        if (character.length() == 1 && ch < 128) {
+            return ascii[escPrefix ? 128 + ch : ch];
+        }
+        return character.getBytes(Charsets.UTF_8);
+    }
+
+    /** CSI final, CSI 1;m final when modified, SS3 final in application cursor mode */
+    private void cursorKey(KeyCode code, char fin) {
+        final byte[][] combinations = new byte[COMBINATIONS][];
+        combinations[0] = bytes(CSI + fin);
+        for (int mods = 1; mods < COMBINATIONS; ++mods) {
+            combinations[mods] = bytes(CSI + "1;" + (1 + mods) + fin);
+        }
+        normal.put(code, combinations);
+        applicationCursor.put(code, bytes(SS3 + fin));
+    }
+
+    /** CSI n ~, CSI n;m ~ when modified */
+    private void tildeKey(KeyCode code, int n) {
+        final byte[][] combinations = new byte[COMBINATIONS][];
+        combinations[0] = bytes(CSI + n + '~');
+        for (int mods = 1; mods < COMBINATIONS; ++mods) {
+            combinations[mods] = bytes(CSI + n + ';' + (1 + mods) + '~');
+        }
+        normal.put(code, combinations);
+    }
+
+    /** SS3 final, CSI 1;m final when modified */
+    private void functionKey(KeyCode code, char fin) {
+        final byte[][] combinations = new byte[COMBINATIONS][];
+        combinations[0] = bytes(SS3 + fin);
+        for (int mods = 1; mods < COMBINATIONS; ++mods) {
+            combinations[mods] = bytes(CSI + "1;" + (1 + mods) + fin);
+        }
+        normal.put(code, combinations);
+    }
+
+    /** a control character, another one with Ctrl or Shift, prefixed by ESC with Alt */
+    private void controlKey(KeyCode code, String plain, String withCtrl, String withShift) {
+        final byte[][] combinations = new byte[COMBINATIONS][];
+        for (int mods = 0; mods < COMBINATIONS; ++mods) {
+            String text = (mods & CTRL) != 0 ? withCtrl : (mods & SHIFT) != 0 ? withShift : plain;
+            if ((mods & ALT) != 0 && text.length() == 1) {
+                text = '\u001b' + text;
+            }
+            combinations[mods] = bytes(text);
+        }
+        normal.put(code, combinations);
+    }
+
+    private static byte[] bytes(String text) { return text.getBytes(Charsets.US_ASCII); }
+}
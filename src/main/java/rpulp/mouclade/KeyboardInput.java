@@ -1,48 +1,128 @@
 package rpulp.mouclade;
 
-import com.google.common.base.Charsets;
 import javafx.event.EventHandler;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.Charset;
-import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 
+/**
+ * Sends the keys to the pty, encoded by a {@link KeyEncoder} in the cursor and keypad modes of the model, through its
+ * {@link PtyWriter} so the FX thread never waits on the child. The typed event of a key sent when pressed is skipped,
+ * until the key is released: the cursor and function keys have no typed event, the next one belongs to another key.
+ *
+ * Ctrl+Shift+V (Cmd+Shift+V on macOS) and Shift+Insert paste the clipboard, see {@link Paste}, one paste at a time.
+ * Escape cancels the running paste. The other Ctrl+Shift (Cmd+Shift) keys run the actions given to {@link #addShortcut},
+ * e.g. to open the find bar, or else type as usual, e.g. Ctrl+_ sends 0x1f and Ctrl+@ NUL.
+ */
 public class KeyboardInput {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KeyboardInput.class);
 
-    private final OutputStream output;
+    private final PtyWriter writer;
+    private final TerminalModel model;
+    private final KeyEncoder encoder = new KeyEncoder();
+    private final Paste.Listener pasteListener;
+    private final Map<KeyCode, Runnable> shortcuts = new EnumMap<>(KeyCode.class);
     private final EventHandler<KeyEvent> onKeyTyped;
+    private final EventHandler<KeyEvent> onKeyPressed;
+    private final EventHandler<KeyEvent> onKeyReleased;
+    private Paste paste;
+    // the pressed key was handled, its typed event is not sent, reset when it is released
+    private boolean skipTyped = false;
 
-    public KeyboardInput(OutputStream output) {
-        this.output = output;
-        this.onKeyTyped = evt -> {
-            String chars = evt.getCharacter();
-            byte[] bytes = chars.getBytes(Charsets.UTF_8);
-            try {
-                if (bytes.length == 1 && bytes[0] == '\r') {
-                    output.write('\n');
-                } else {
-                    output.write(bytes);
+    /**
+     * @param pasteListener told about the progress of the pastes
+     */
+    KeyboardInput(PtyWriter writer, TerminalModel model, Paste.Listener pasteListener) {
+        this.writer = writer;
+        this.model = model;
+        this.pasteListener = pasteListener;
+        this.onKeyPressed = evt -> {
+            skipTyped = false;
+            if ((evt.isShortcutDown() && evt.isShiftDown() && evt.getCode() == KeyCode.V)
+                    || (evt.isShiftDown() && evt.getCode() == KeyCode.INSERT)) {
+                pasteClipboard();
+                skipTyped = true;
+                evt.consume();
+            } else if (evt.isShortcutDown() && evt.isShiftDown() && shortcuts.containsKey(evt.getCode())) {
+                shortcuts.get(evt.getCode()).run();
+                skipTyped = true;
+                evt.consume();
+            } else if (evt.getCode() == KeyCode.ESCAPE && paste != null && !paste.isDone()) {
+                paste.cancel();
+                skipTyped = true;
+                evt.consume();
+            } else {
+                final byte[] bytes = encoder.pressed(
+                        evt.getCode(),
+                        KeyEncoder.modifiers(evt),
+                        model.isApplicationCursor(),
+                        model.isApplicationKeypad());
+                if (bytes != null) {
+                    send(bytes, evt);
+                    skipTyped = true;
+                    evt.consume();
                 }
-                output.flush();
-            } catch (IOException ex) {
-                throw new RuntimeException(ex);
             }
-            LOGGER.info("typed, text: \""+ evt.getText() + "\", code: " + evt.getCode() + ", char: " + evt.getCharacter() + " / [" + toHexString(bytes) + "]");
         };
+        this.onKeyReleased = evt -> skipTyped = false;
+        this.onKeyTyped = evt -> {
+            if (skipTyped) {
+                skipTyped = false;
+                evt.consume();
+                return;
+            }
+            final byte[] bytes = encoder.typed(evt.getCharacter(), KeyEncoder.modifiers(evt));
+            if (bytes != null) {
+                send(bytes, evt);
+                evt.consume();
+            }
+        };
+    }
+
+    /** Ctrl+Shift+code (Cmd+Shift+code on macOS) runs the action instead of typing */
+    void addShortcut(KeyCode code, Runnable action) { shortcuts.put(code, action); }
+
+    private void send(byte[] bytes, KeyEvent evt) {
+        if (!writer.offer(bytes)) {
+            if (writer.isClosed()) {
+                // the process ended, its tab is closing
+                LOGGER.debug("pty closed, dropped " + bytes.length + " bytes");
+            } else {
+                LOGGER.warn("input queue full, dropped " + bytes.length + " bytes");
+            }
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(evt.getEventType() + ", text: \""+ evt.getText() + "\", code: " + evt.getCode() + ", char: " + evt.getCharacter() + " / [" + toHexString(bytes) + "]");
+        }
     }
 
     public EventHandler<KeyEvent> keyTypedHandler() { return onKeyTyped; }
 
+    public EventHandler<KeyEvent> keyPressedHandler() { return onKeyPressed; }
+
+    public EventHandler<KeyEvent> keyReleasedHandler() { return onKeyReleased; }
+
+    private void pasteClipboard() {
+        Clipboard clipboard = Clipboard.getSystemClipboard();
+        if (!clipboard.hasString() || clipboard.getString().isEmpty()) {
+            return;
+        }
+        if (paste != null && !paste.isDone()) {
+            LOGGER.info("a paste is running, ignored");
+            return;
+        }
+        paste = new Paste(clipboard.getString(), model.isBracketedPaste(), writer, pasteListener).start();
+    }
+
     private String toHexString(byte[] bytes) {
         StringBuilder sb = new StringBuilder();
         for (int ii = 0; ii < bytes.length; ++ii) {
-            sb.append(Integer.toHexString((bytes[ii] & 0xff) >>> 8 ));
+            sb.append(Integer.toHexString((bytes[ii] & 0xff) >>> 4));
             sb.append(Integer.toHexString(bytes[ii] & 0x0f) );
         }
         return sb.toString();
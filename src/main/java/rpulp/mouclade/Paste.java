@@ -0,0 +1,109 @@
+package rpulp.mouclade;
+
+import com.google.common.base.Charsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A text pasted to the pty, streamed from its own thread in chunks through the {@link PtyWriter}, so the FX thread
+ * neither encodes tens of MB nor waits on a child reading slowly.
+ *
+ * The line breaks are sent as CR, like the Enter key of xterm. When the application enabled bracketed paste the text
+ * is wrapped in ESC [200~ and ESC [201~, and its ESC characters are dropped so it cannot end the paste early. The end
+ * marker is also sent when the paste is cancelled.
+ */
+class Paste implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Paste.class);
+
+    static final byte[] BRACKET_START = "\u001b[200~".getBytes(Charsets.US_ASCII);
+    static final byte[] BRACKET_END = "\u001b[201~".getBytes(Charsets.US_ASCII);
+
+    private static final int CHUNK_CHARS = 16 * 1024;
+
+    /**
+     * called on the paste thread
+     */
+    interface Listener {
+        void onProgress(Paste paste, long sentChars, long totalChars);
+
+        void onDone(Paste paste, boolean cancelled);
+    }
+
+    private final String text;
+    private final boolean bracketed;
+    private final PtyWriter writer;
+    private final Listener listener;
+    private volatile boolean cancelled = false;
+    private volatile boolean done = false;
+
+    Paste(String text, boolean bracketed, PtyWriter writer, Listener listener) {
+        this.text = text;
+        this.bracketed = bracketed;
+        this.writer = writer;
+        this.listener = listener;
+    }
+
+    /** streams the text from an I/O thread */
+    Paste start() {
+        IoThreads.start("Paste", this);
+        return this;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isDone() { return done; }
+
+    @Override
+    public void run() {
+        try {
+            if (bracketed) {
+                writer.write(BRACKET_START, 0, BRACKET_START.length);
+            }
+            final StringBuilder chunk = new StringBuilder(CHUNK_CHARS);
+            int from = 0;
+            while (from < text.length() && !cancelled) {
+                int to = Math.min(text.length(), from + CHUNK_CHARS);
+                if (to < text.length() && Character.isHighSurrogate(text.charAt(to - 1))) {
+                    --to; // keeps the pair in one chunk
+                }
+                chunk.setLength(0);
+                append(chunk, from, to);
+                final byte[] bytes = chunk.toString().getBytes(Charsets.UTF_8);
+                if (!writer.write(bytes, 0, bytes.length)) {
+                    cancelled = true;
+                    break;
+                }
+                from = to;
+                listener.onProgress(this, from, text.length());
+            }
+            if (bracketed) {
+                writer.write(BRACKET_END, 0, BRACKET_END.length);
+            }
+        } catch (InterruptedException ex) {
+            cancelled = true;
+        } catch (RuntimeException ex) {
+            LOGGER.error("paste failed " + ex, ex);
+            cancelled = true;
+        } finally {
+            done = true;
+            listener.onDone(this, cancelled);
+        }
+    }
+
+    /** the chars from..to with the line breaks as CR, and without ESC when bracketed */
+    private void append(StringBuilder chunk, int from, int to) {
+        for (int ii = from; ii < to; ++ii) {
+            final char ch = text.charAt(ii);
+            if (ch == '\n') {
+                if (ii == 0 || text.charAt(ii - 1) != '\r') {
+                    chunk.append('\r');
+                }
+            } else if (ch != '\u001b' || !bracketed) {
+                chunk.append(ch);
+            }
+        }
+    }
+}
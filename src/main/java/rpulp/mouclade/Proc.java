@@ -1,38 +1,77 @@
 package rpulp.mouclade;
 
-import javafx.concurrent.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * The native helper, running the shell in a pseudo terminal.
+ *
+ * The helper stdout carries the pty output, its stderr is merged into it so the output is read by a single reader, in
+ * order. Its stdin carries the bytes for the pty, 0xff escapes the commands to the helper, see {@link PtyInput}.
+ */
 public class Proc implements AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Proc.class);
 
     public interface InputListener {
         void onInput(byte[] bytes, int len);
+
+        /** the stream ended, called once after the last onInput */
+        default void onEnd() {}
     }
 
-    private static class InputReader extends Task<Void> implements AutoCloseable {
+    /**
+     * the read buffer: it doubles while reads fill it, and halves after a run of reads using less than a quarter of it
+     */
+    static class ReadBuffer {
+        static final int MIN_SIZE = 4 * 1024;
+        static final int MAX_SIZE = 256 * 1024;
+        static final int SMALL_READS_BEFORE_SHRINK = 16;
+
+        private byte[] bytes = new byte[MIN_SIZE];
+        private int smallReads = 0;
+
+        byte[] bytes() { return bytes; }
+
+        /** sizes the buffer for the next read, after a read of len bytes */
+        void adapt(int len) {
+            if (len == bytes.length) {
+                smallReads = 0;
+                if (bytes.length < MAX_SIZE) {
+                    bytes = new byte[bytes.length * 2];
+                }
+            } else if (len < bytes.length / 4 && bytes.length > MIN_SIZE) {
+                if (++smallReads == SMALL_READS_BEFORE_SHRINK) {
+                    smallReads = 0;
+                    bytes = new byte[bytes.length / 2];
+                }
+            } else {
+                smallReads = 0;
+            }
+        }
+    }
+
+    private static class InputReader implements Runnable, AutoCloseable {
         private final InputStream in;
-        private final byte[] bytes = new byte[512];
+        private final ReadBuffer buffer = new ReadBuffer();
+        private final ChunkHistogram chunkSizes = new ChunkHistogram();
         private final InputListener listener;
         private final Thread thread;
 
         private InputReader(InputStream in, InputListener listener) {
             this.in = in;
             this.listener = listener;
-            this.thread = new Thread(this);
-            this.thread.setDaemon(true);
-            this.thread.start();
+            this.thread = IoThreads.start("InputReader", this);
         }
 
         @Override
-        public void close() throws Exception {
+        public void close() {
             thread.interrupt();
         }
 
@@ -41,41 +80,102 @@ public class Proc implements AutoCloseable {
         }
 
         @Override
-        protected Void call() throws Exception {
+        public void run() {
             LOGGER.info("InputReader started");
             try {
                 runInner();
             } catch (Exception ex) {
                 LOGGER.error("InputReader died " + ex, ex);
             } finally {
-                LOGGER.info("InputReader stopped");
+                LOGGER.info("InputReader stopped, " + chunkSizes);
+                listener.onEnd();
             }
-            return null;
         }
 
         private void runInner() throws IOException {
             for(;;) {
+                final byte[] bytes = buffer.bytes();
                 final int len = in.read(bytes);
                 if (len == -1) {
                     return;
                 }
+                chunkSizes.record(len);
                 listener.onInput(bytes, len);
+                buffer.adapt(len);
             }
         }
     }
 
+    /**
+     * stdin of the helper: the bytes for the pty, 0xff is doubled, and the helper commands escaped by 0xff
+     */
+    private static class PtyInput extends OutputStream {
+        private static final int ESCAPE = 0xff;
+        private static final int RESIZE = 'W';
+
+        private final OutputStream out;
+
+        private PtyInput(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public synchronized void write(int byt) throws IOException {
+            if ((byt & 0xff) == ESCAPE) {
+                out.write(ESCAPE);
+            }
+            out.write(byt);
+        }
+
+        @Override
+        public synchronized void write(byte[] bytes, int off, int len) throws IOException {
+            final int end = off + len;
+            int from = off;
+            for (int ii = off; ii < end; ++ii) {
+                if (bytes[ii] == (byte) ESCAPE) {
+                    // the 0xff ends this segment and starts the next one, so it is written twice
+                    out.write(bytes, from, ii + 1 - from);
+                    from = ii;
+                }
+            }
+            out.write(bytes, from, end - from);
+        }
+
+        synchronized void resize(int rows, int cols) throws IOException {
+            out.write(new byte[] {
+                    (byte) ESCAPE, (byte) RESIZE, (byte) (rows >>> 8), (byte) rows, (byte) (cols >>> 8), (byte) cols
+            });
+            out.flush();
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+    }
+
     public static Proc start(
             List<String> cmd,
-            InputListener stdoutListener,
-            InputListener stderrListener) throws IOException {
-        ProcessBuilder builder = new ProcessBuilder().command(cmd);
+            int rows,
+            int cols,
+            InputListener outputListener) throws IOException {
+        List<String> cmdWithSize = new ArrayList<>(cmd);
+        cmdWithSize.add("--rows");
+        cmdWithSize.add(Integer.toString(rows));
+        cmdWithSize.add("--cols");
+        cmdWithSize.add(Integer.toString(cols));
+        ProcessBuilder builder = new ProcessBuilder().command(cmdWithSize).redirectErrorStream(true);
         buildPathEnv(builder);
         Process process = builder.start();
         LOGGER.info("proc started");
         return new Proc(
                 process,
-                new InputReader(process.getInputStream(), stdoutListener),
-                new InputReader(process.getErrorStream(), stderrListener)
+                new InputReader(process.getInputStream(), outputListener)
         );
     }
 
@@ -86,15 +186,13 @@ public class Proc implements AutoCloseable {
     }
 
     private final Process process;
-    private final InputReader stdoutReader;
-    private final InputReader stderrReader;
-    private final OutputStream output;
+    private final InputReader outputReader;
+    private final PtyInput input;
 
-    public Proc(Process process, InputReader stdoutReader, InputReader stderrReader) {
+    private Proc(Process process, InputReader outputReader) {
         this.process = process;
-        this.stdoutReader = stdoutReader;
-        this.stderrReader = stderrReader;
-        this.output = process.getOutputStream();
+        this.outputReader = outputReader;
+        this.input = new PtyInput(process.getOutputStream());
     }
 
     @Override
@@ -103,19 +201,23 @@ public class Proc implements AutoCloseable {
             process.destroy();
             process.waitFor();
         } finally {
-            try {
-                stdoutReader.close();
-            } finally {
-                stderrReader.close();
-            }
+            outputReader.close();
         }
     }
 
-    public OutputStream output() { return output; }
+    /** the keyboard side of the pty */
+    public OutputStream output() { return input; }
+
+    /** sets the pty window size, the shell gets a SIGWINCH */
+    public void resize(int rows, int cols) throws IOException {
+        input.resize(rows, cols);
+    }
+
+    /** distribution of the sizes of the reads on the output */
+    ChunkHistogram outputChunkSizes() { return outputReader.chunkSizes; }
 
     public void join() throws InterruptedException {
-        stdoutReader.join();
-        stderrReader.join();
+        outputReader.join();
         process.waitFor();
     }
 }
@@ -0,0 +1,228 @@
+package rpulp.mouclade;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes the keyboard side of the pty on an executor shared by the sessions, so a child that stops reading its input
+ * cannot block the caller.
+ *
+ * A drain task is queued when there is something to write and none is queued or running, it writes until the queue is
+ * empty and ends: an idle writer holds no thread, only a write in progress does, blocked as long as the child does not
+ * read. The bytes queued while a write is in progress are written by the next one, a burst of keys or a paste goes out
+ * in a single write and flush. The queue is bounded: {@link #offer} never waits and rejects what does not fit, it is
+ * meant for the FX thread, {@link #write} waits for room and is meant for the threads streaming large inputs. The
+ * resizes are applied by the same task, the last one wins.
+ */
+class PtyWriter implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PtyWriter.class);
+
+    static final int CAPACITY = 256 * 1024;
+    private static final int INITIAL_SIZE = 4 * 1024;
+
+    interface Resizer {
+        void resize(int rows, int cols) throws IOException;
+    }
+
+    private final OutputStream out;
+    private final Resizer resizer;
+
+    // a ReentrantLock rather than the monitor, a virtual thread is not pinned while it waits for room (it still is
+    // while it writes, PtyInput.write is synchronized)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    // queued bytes, swapped with spare by the drain task
+    private byte[] pending = new byte[INITIAL_SIZE];
+    private int pendingLen = 0;
+    private byte[] spare = new byte[INITIAL_SIZE];
+    private int resizeRows = -1;
+    private int resizeCols = -1;
+    private boolean closed = false;
+    // a drain task is queued or running
+    private boolean draining = false;
+
+    private long batches = 0;
+    private long bytes = 0;
+
+    private final Executor executor;
+
+    /**
+     * @param executor runs the drain tasks, it must not run them in the caller thread
+     */
+    PtyWriter(OutputStream out, Resizer resizer, Executor executor) {
+        this.out = out;
+        this.resizer = resizer;
+        this.executor = executor;
+    }
+
+    /**
+     * queues all the bytes without waiting
+     *
+     * @return false if they do not fit or the writer is closed, nothing is queued then
+     */
+    boolean offer(byte[] bytes, int off, int len) {
+        lock.lock();
+        try {
+            if (closed || len > CAPACITY - pendingLen) {
+                return false;
+            }
+            append(bytes, off, len);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean offer(byte[] bytes) { return offer(bytes, 0, bytes.length); }
+
+    /**
+     * queues the bytes, waiting for room as needed
+     *
+     * @return false if the writer was closed before all were queued
+     */
+    boolean write(byte[] bytes, int off, int len) throws InterruptedException {
+        final int end = off + len;
+        lock.lock();
+        try {
+            while (off < end) {
+                while (!closed && pendingLen == CAPACITY) {
+                    notFull.await();
+                }
+                if (closed) {
+                    return false;
+                }
+                final int count = Math.min(end - off, CAPACITY - pendingLen);
+                append(bytes, off, count);
+                off += count;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** sets the pty size, without waiting */
+    void resize(int rows, int cols) {
+        lock.lock();
+        try {
+            resizeRows = rows;
+            resizeCols = cols;
+            drainLater();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        LOGGER.info("PtyWriter closed, " + bytes + " bytes in " + batches + " writes");
+    }
+
+    /** true once closed, by {@link #close} or since a write failed */
+    boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(byte[] bytes, int off, int len) {
+        if (pending.length < pendingLen + len) {
+            pending = Arrays.copyOf(pending, Math.min(CAPACITY, Math.max(pendingLen + len, pending.length * 2)));
+        }
+        System.arraycopy(bytes, off, pending, pendingLen, len);
+        pendingLen += len;
+        drainLater();
+    }
+
+    /** queues a drain task unless one is queued or running, called with the lock held */
+    private void drainLater() {
+        if (draining || closed) {
+            return;
+        }
+        draining = true;
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException ex) {
+            LOGGER.warn("PtyWriter rejected, closing " + ex);
+            draining = false;
+            closed = true;
+            notFull.signalAll();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (drainOnce()) {
+                // until the queue is empty
+            }
+        } catch (Exception ex) {
+            LOGGER.error("PtyWriter died " + ex, ex);
+            close();
+        }
+    }
+
+    /**
+     * writes what is queued
+     *
+     * @return false once there is nothing left, the task ends and the next bytes queue a new one
+     */
+    private boolean drainOnce() throws IOException {
+        final byte[] batch;
+        final int len;
+        final int rows;
+        final int cols;
+        lock.lock();
+        try {
+            if (closed || (pendingLen == 0 && resizeRows < 0)) {
+                draining = false;
+                return false;
+            }
+            batch = pending;
+            len = pendingLen;
+            pending = spare;
+            pendingLen = 0;
+            spare = batch;
+            rows = resizeRows;
+            cols = resizeCols;
+            resizeRows = -1;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (len > 0) {
+            out.write(batch, 0, len);
+            out.flush();
+            ++batches;
+            bytes += len;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("wrote " + len + " bytes");
+            }
+        }
+        if (rows >= 0) {
+            resizer.resize(rows, cols);
+        }
+        return true;
+    }
+}
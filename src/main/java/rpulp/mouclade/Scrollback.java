@@ -0,0 +1,213 @@
+package rpulp.mouclade;
+
+import java.util.Arrays;
+
+/**
+ * History of the rows that scrolled off the top of the screen.
+ *
+ * Each row is packed in a single char[], trailing blanks are trimmed and the style ids are run length encoded:
+ * <pre>
+ * [cell count] [run count] [flags] ([run length] [style hi] [style lo])* [UTF-16 text]
+ * </pre>
+ * A soft wrapped row, continued on the next one, is flagged and keeps its trailing blanks.
+ * Each cell holds one code point of the text, so cells holding supplementary characters take two chars.
+ * The rows are kept in a ring, appending and evicting the oldest row are O(1).
+ *
+ * Besides its index in the ring, 0 being the oldest, each row has an id that does not change when older rows are
+ * evicted. The rows are indexed for the searches as they are pushed, see {@link TrigramIndex}.
+ */
+class Scrollback {
+
+    private static final int HEADER_SIZE = 3;
+    private static final int RUN_SIZE = 3;
+    private static final char FLAG_WRAPPED = 1;
+
+    // rough heap cost of a row: array header + the reference in the ring
+    private static final int ROW_OVERHEAD_BYTES = 16 + 8;
+
+    private final int maxLines;
+    private final long maxBytes;
+
+    private char[][] lines = new char[16][];
+    private int head = 0; // index of the oldest row in lines
+    private int size = 0;
+    private long bytes = 0;
+    private long pushCount = 0;
+    private final TrigramIndex trigramIndex = new TrigramIndex();
+
+    /**
+     * @param maxLines maximum number of rows kept
+     * @param maxBytes maximum (approximate) heap used by the rows and their index, 0 for no limit
+     */
+    Scrollback(int maxLines, long maxBytes) {
+        this.maxLines = maxLines;
+        this.maxBytes = maxBytes;
+    }
+
+    int size() { return size; }
+
+    int maxLines() { return maxLines; }
+
+    /** approximate heap used by the rows and their index */
+    long bytes() { return bytes + trigramIndex.bytes(); }
+
+    /** number of rows pushed since the creation, changes whenever the rows do */
+    long pushCount() { return pushCount; }
+
+    /** id of row 0, the ids of the next rows follow */
+    long firstRowId() { return pushCount - size; }
+
+    TrigramIndex trigramIndex() { return trigramIndex; }
+
+    void clear() {
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+        bytes = 0;
+        ++pushCount;
+        trigramIndex.clear();
+    }
+
+    /**
+     * appends a row, evicting the oldest ones when over the limits
+     */
+    void push(int[] codePoints, int[] styles, int offset, int width, boolean wrapped) {
+        if (maxLines <= 0) {
+            return;
+        }
+        char[] packed = pack(codePoints, styles, offset, width, wrapped);
+        if (size == maxLines) {
+            evictOldest();
+        }
+        if (size == lines.length) {
+            grow();
+        }
+        lines[index(size)] = packed;
+        trigramIndex.add(pushCount, codePoints, offset, packed[0]);
+        ++size;
+        ++pushCount;
+        bytes += rowBytes(packed);
+        while (maxBytes > 0 && bytes() > maxBytes && size > 1) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * number of non trimmed cells of a row, 0 is the oldest row
+     */
+    int lineLength(int row) {
+        return line(row)[0];
+    }
+
+    /**
+     * true if the row is continued on the next one
+     */
+    boolean isWrapped(int row) {
+        return (line(row)[2] & FLAG_WRAPPED) != 0;
+    }
+
+    /**
+     * unpacks a row into the given arrays, the cells after the stored ones are blanked
+     */
+    void readLine(int row, int[] codePoints, int[] styles, int offset, int width) {
+        char[] packed = line(row);
+        int cellCount = Math.min(packed[0], width);
+        int runCount = packed[1];
+        int textAt = HEADER_SIZE + runCount * RUN_SIZE;
+        for (int xx = 0; xx < cellCount; ++xx) {
+            int codePoint = Character.codePointAt(packed, textAt);
+            codePoints[offset + xx] = codePoint;
+            textAt += Character.charCount(codePoint);
+        }
+        Arrays.fill(codePoints, offset + cellCount, offset + width, ' ');
+
+        int xx = 0;
+        for (int rr = 0; rr < runCount && xx < cellCount; ++rr) {
+            int at = HEADER_SIZE + rr * RUN_SIZE;
+            int end = Math.min(xx + packed[at], cellCount);
+            Arrays.fill(styles, offset + xx, offset + end, getInt(packed, at + 1));
+            xx = end;
+        }
+        Arrays.fill(styles, offset + xx, offset + width, StyleTable.DEFAULT);
+    }
+
+    private char[] line(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row: " + row + ", size: " + size);
+        }
+        return lines[index(row)];
+    }
+
+    private int index(int row) {
+        int idx = head + row;
+        return idx >= lines.length ? idx - lines.length : idx;
+    }
+
+    private void evictOldest() {
+        trigramIndex.evict(firstRowId());
+        bytes -= rowBytes(lines[head]);
+        lines[head] = null;
+        head = index(1);
+        --size;
+    }
+
+    private void grow() {
+        char[][] old = lines;
+        lines = new char[(int) Math.min((long) old.length * 2, maxLines)][];
+        for (int ii = 0; ii < size; ++ii) {
+            lines[ii] = old[(head + ii) % old.length];
+        }
+        head = 0;
+    }
+
+    private static long rowBytes(char[] packed) {
+        return ROW_OVERHEAD_BYTES + 2L * packed.length;
+    }
+
+    private static char[] pack(int[] codePoints, int[] styles, int offset, int width, boolean wrapped) {
+        int cellCount = width;
+        while (!wrapped && cellCount > 0 && isBlank(codePoints, styles, offset + cellCount - 1)) {
+            --cellCount;
+        }
+        int runCount = 0;
+        int textLength = 0;
+        for (int xx = 0; xx < cellCount; ++xx) {
+            if (xx == 0 || styles[offset + xx - 1] != styles[offset + xx]) {
+                ++runCount;
+            }
+            textLength += Character.charCount(codePoints[offset + xx]);
+        }
+
+        char[] packed = new char[HEADER_SIZE + runCount * RUN_SIZE + textLength];
+        packed[0] = (char) cellCount;
+        packed[1] = (char) runCount;
+        packed[2] = wrapped ? FLAG_WRAPPED : 0;
+        int at = HEADER_SIZE - RUN_SIZE;
+        for (int xx = 0; xx < cellCount; ++xx) {
+            int cell = offset + xx;
+            if (xx == 0 || styles[cell - 1] != styles[cell]) {
+                at += RUN_SIZE;
+                putInt(packed, at + 1, styles[cell]);
+            }
+            ++packed[at];
+        }
+        at = HEADER_SIZE + runCount * RUN_SIZE;
+        for (int xx = 0; xx < cellCount; ++xx) {
+            at += Character.toChars(codePoints[offset + xx], packed, at);
+        }
+        return packed;
+    }
+
+    private static boolean isBlank(int[] codePoints, int[] styles, int cell) {
+        return codePoints[cell] == ' ' && styles[cell] == StyleTable.DEFAULT;
+    }
+
+    private static void putInt(char[] packed, int at, int value) {
+        packed[at] = (char) (value >>> 16);
+        packed[at + 1] = (char) value;
+    }
+
+    private static int getInt(char[] packed, int at) {
+        return (packed[at] << 16) | packed[at + 1];
+    }
+}
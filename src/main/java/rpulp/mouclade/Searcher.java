@@ -0,0 +1,323 @@
+package rpulp.mouclade;
+
+import gnu.trove.list.array.TLongArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Find in the screen and the history, on a background thread.
+ *
+ * The screen is searched first, bottom up, then the history from the newest row, and the matches are reported as
+ * they are found. The model monitor is only held while the rows of one index block are copied, the matching runs
+ * without it so the parsing is not held up. The history blocks whose trigram filters rule the text out are skipped,
+ * see {@link TrigramIndex}: the text searched for, or for a regex the literal texts any match contains, see
+ * {@link #requiredLiterals(String)}. A regex without such a text of 3 code points or more, one with an alternation at
+ * the top level for instance, reads every block. Matches do not span rows.
+ */
+class Searcher implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Searcher.class);
+
+    /**
+     * called on the search thread
+     */
+    interface Listener {
+        void onMatch(Match match);
+
+        void onDone(int matchCount, boolean cancelled);
+    }
+
+    static final class Match {
+        final int screenRow; // -1 when in the history
+        final long historyRowId; // see Scrollback#firstRowId(), -1 when on the screen
+        final int column;
+        final int length;
+        final String text; // of the whole row
+
+        Match(int screenRow, long historyRowId, int column, int length, String text) {
+            this.screenRow = screenRow;
+            this.historyRowId = historyRowId;
+            this.column = column;
+            this.length = length;
+            this.text = text;
+        }
+
+        @Override public String toString() {
+            return (screenRow >= 0 ? "screen " + screenRow : "history " + historyRowId) + ":" + column + "+" + length;
+        }
+    }
+
+    private final TerminalModel model;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Searcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // bumped by each search and cancel, a search stops once it is no longer the current one
+    private final AtomicInteger generation = new AtomicInteger();
+
+    Searcher(TerminalModel model) {
+        this.model = model;
+    }
+
+    /**
+     * starts a search, the running one is cancelled
+     *
+     * @throws java.util.regex.PatternSyntaxException if the regex is invalid
+     */
+    Future<?> search(String query, boolean regex, boolean ignoreCase, Listener listener) {
+        final int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        final Pattern pattern = regex || ignoreCase ? Pattern.compile(query, regex ? flags : flags | Pattern.LITERAL) : null;
+        final long[] trigrams = regex ? regexTrigrams(query) : TrigramIndex.trigrams(query);
+        final int searchGeneration = generation.incrementAndGet();
+        return executor.submit(() -> {
+            int count = 0;
+            try {
+                count = run(searchGeneration, query, pattern, trigrams, listener);
+            } catch (RuntimeException ex) {
+                LOGGER.error("search failed: " + ex, ex);
+            }
+            listener.onDone(count, generation.get() != searchGeneration);
+        });
+    }
+
+    void cancel() {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private int run(int searchGeneration, String query, Pattern pattern, long[] trigrams, Listener listener) {
+        if (query.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+
+        final String[] screenRows;
+        final long lastRowId;
+        synchronized (model) {
+            screenRows = new String[model.height()];
+            for (int yy = 0; yy < screenRows.length; ++yy) {
+                screenRows[yy] = new String(model.codePoints(), model.rowStart(yy), model.width());
+            }
+            lastRowId = model.scrollback().firstRowId() + model.scrollback().size() - 1;
+        }
+        for (int yy = screenRows.length - 1; yy >= 0; --yy) {
+            if (generation.get() != searchGeneration) {
+                return count;
+            }
+            count += match(screenRows[yy], yy, -1, query, pattern, listener);
+        }
+
+        // the rows pushed since the search started are not searched
+        final String[] texts = new String[TrigramIndex.BLOCK_ROWS];
+        final long[] ids = new long[TrigramIndex.BLOCK_ROWS];
+        int[] codePoints = new int[256];
+        int[] styles = new int[256];
+        for (long block = TrigramIndex.block(lastRowId); block >= oldestBlock(); --block) {
+            if (generation.get() != searchGeneration) {
+                return count;
+            }
+            int rows = 0;
+            synchronized (model) {
+                final Scrollback scrollback = model.scrollback();
+                final long firstRowId = scrollback.firstRowId();
+                if (scrollback.trigramIndex().mayContain(block, trigrams)) {
+                    final long from = Math.max(firstRowId, block * TrigramIndex.BLOCK_ROWS);
+                    final long to = Math.min(lastRowId, (block + 1) * TrigramIndex.BLOCK_ROWS - 1);
+                    for (long id = to; id >= from; --id) {
+                        final int row = (int) (id - firstRowId);
+                        final int len = scrollback.lineLength(row);
+                        if (codePoints.length < len) {
+                            codePoints = new int[len];
+                            styles = new int[len];
+                        }
+                        scrollback.readLine(row, codePoints, styles, 0, len);
+                        texts[rows] = new String(codePoints, 0, len);
+                        ids[rows] = id;
+                        ++rows;
+                    }
+                }
+            }
+            for (int ii = 0; ii < rows; ++ii) {
+                count += match(texts[ii], -1, ids[ii], query, pattern, listener);
+            }
+        }
+        return count;
+    }
+
+    /** the block of the oldest history row, it moves up as the rows are evicted */
+    private long oldestBlock() {
+        synchronized (model) {
+            return TrigramIndex.block(model.scrollback().firstRowId());
+        }
+    }
+
+    private static long[] regexTrigrams(String regex) {
+        final TLongArrayList trigrams = new TLongArrayList();
+        for (String literal : requiredLiterals(regex)) {
+            trigrams.addAll(TrigramIndex.trigrams(literal));
+        }
+        return trigrams.toArray();
+    }
+
+    /**
+     * texts any match of a valid regex contains: the runs of plain characters outside the groups and the classes, a
+     * character made optional by a quantifier ends a run without it
+     *
+     * @return empty when the regex has an alternation at the top level or constructs starting with "(?", whose flags
+     * or lookarounds are not worth following
+     */
+    static List<String> requiredLiterals(String regex) {
+        final List<String> literals = new ArrayList<>();
+        if (regex.contains("(?")) {
+            return literals;
+        }
+        final StringBuilder run = new StringBuilder();
+        // the last char of the run was just appended, a quantifier applies to it
+        boolean literalLast = false;
+        for (int ii = 0; ii < regex.length(); ++ii) {
+            final char ch = regex.charAt(ii);
+            switch (ch) {
+                case '\\':
+                    final char escaped = regex.charAt(++ii);
+                    if (Character.isLetterOrDigit(escaped)) {
+                        // a class, an anchor, a back reference, a character code or a quote
+                        endRun(run, literals);
+                        literalLast = false;
+                        if (escaped == 'Q') {
+                            final int end = regex.indexOf("\\E", ii);
+                            ii = end < 0 ? regex.length() : end + 1;
+                        }
+                    } else {
+                        run.append(escaped);
+                        literalLast = true;
+                    }
+                    break;
+                case '[':
+                    endRun(run, literals);
+                    literalLast = false;
+                    ii = classEnd(regex, ii);
+                    break;
+                case '(':
+                    endRun(run, literals);
+                    literalLast = false;
+                    ii = groupEnd(regex, ii);
+                    break;
+                case '|':
+                    literals.clear();
+                    return literals;
+                case '*':
+                case '?':
+                case '{':
+                    if (literalLast) {
+                        run.setLength(run.length() - Character.charCount(run.codePointBefore(run.length())));
+                    }
+                    endRun(run, literals);
+                    literalLast = false;
+                    if (ch == '{') {
+                        final int end = regex.indexOf('}', ii);
+                        ii = end < 0 ? regex.length() : end;
+                    }
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    endRun(run, literals);
+                    literalLast = false;
+                    break;
+                default:
+                    run.append(ch);
+                    literalLast = true;
+            }
+        }
+        endRun(run, literals);
+        return literals;
+    }
+
+    private static void endRun(StringBuilder run, List<String> literals) {
+        if (run.length() > 0) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    /** the index of the ] closing the class opened at start */
+    private static int classEnd(String regex, int start) {
+        int ii = start + 1;
+        if (ii < regex.length() && regex.charAt(ii) == '^') {
+            ++ii;
+        }
+        if (ii < regex.length() && regex.charAt(ii) == ']') {
+            ++ii; // a ] first is a literal
+        }
+        for (int depth = 1; ii < regex.length(); ++ii) {
+            final char ch = regex.charAt(ii);
+            if (ch == '\\') {
+                ++ii;
+            } else if (ch == '[') {
+                ++depth;
+            } else if (ch == ']' && --depth == 0) {
+                return ii;
+            }
+        }
+        return regex.length();
+    }
+
+    /** the index of the ) closing the group opened at start */
+    private static int groupEnd(String regex, int start) {
+        int depth = 0;
+        for (int ii = start; ii < regex.length(); ++ii) {
+            final char ch = regex.charAt(ii);
+            if (ch == '\\') {
+                ++ii;
+            } else if (ch == '[') {
+                ii = classEnd(regex, ii);
+            } else if (ch == '(') {
+                ++depth;
+            } else if (ch == ')' && --depth == 0) {
+                return ii;
+            }
+        }
+        return regex.length();
+    }
+
+    private static int match(String text, int screenRow, long historyRowId, String query, Pattern pattern, Listener listener) {
+        int count = 0;
+        if (pattern == null) {
+            for (int at = text.indexOf(query); at >= 0; at = text.indexOf(query, at + query.length())) {
+                listener.onMatch(match(text, screenRow, historyRowId, at, at + query.length()));
+                ++count;
+            }
+        } else {
+            final Matcher matcher = pattern.matcher(text);
+            while (matcher.find()) {
+                if (matcher.end() > matcher.start()) {
+                    listener.onMatch(match(text, screenRow, historyRowId, matcher.start(), matcher.end()));
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /** a match of the chars start..end, converted to cells */
+    private static Match match(String text, int screenRow, long historyRowId, int start, int end) {
+        final int column = text.codePointCount(0, start);
+        return new Match(screenRow, historyRowId, column, text.codePointCount(start, end), text);
+    }
+}
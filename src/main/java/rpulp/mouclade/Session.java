@@ -0,0 +1,71 @@
+package rpulp.mouclade;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One terminal: the shell in its pty, the parser and the model it feeds.
+ *
+ * The output is parsed and the input written on the executors shared by the sessions, see {@link SessionManager}. The
+ * session owns no thread but the reader of its process output, blocked in its read.
+ */
+class Session implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Session.class);
+
+    interface EndListener {
+        /** called once the process output ended and was parsed, on a pump thread */
+        void onEnd(Session session);
+    }
+
+    private final int id;
+    private final TerminalModel model;
+    private final InputPump inputPump;
+    private final Proc proc;
+    private final PtyWriter writer;
+
+    /**
+     * @param executor parses the output
+     * @param writers writes the input, see {@link PtyWriter}
+     */
+    Session(int id, List<String> command, Executor executor, Executor writers, EndListener endListener)
+            throws IOException {
+        this.id = id;
+        this.model = new TerminalModel(new Scrollback(Config.SCROLLBACK_LINES, Config.SCROLLBACK_BYTES));
+        this.model.setFloodFrameInterval(TimeUnit.SECONDS.toNanos(1) / Math.max(1, Config.FLOOD_FPS));
+        this.inputPump = new InputPump(new InputParser(model), model, executor, () -> endListener.onEnd(this));
+        this.proc = Proc.start(command, model.height(), model.width(), inputPump.newStream());
+        this.writer = new PtyWriter(proc.output(), proc::resize, writers);
+        // the model resize reflows the screen and forwards the new size to the pty
+        model.setResizeListener((width, height) -> writer.resize(height, width));
+        LOGGER.info("session " + id + " started");
+    }
+
+    int id() { return id; }
+
+    TerminalModel model() { return model; }
+
+    /** the keyboard side of the pty */
+    PtyWriter writer() { return writer; }
+
+    /** distribution of the sizes of the reads on the process output */
+    ChunkHistogram outputChunkSizes() { return proc.outputChunkSizes(); }
+
+    @Override
+    public void close() throws Exception {
+        writer.close();
+        try {
+            proc.close();
+        } finally {
+            inputPump.close();
+        }
+    }
+
+    @Override
+    public String toString() { return "session " + id; }
+}
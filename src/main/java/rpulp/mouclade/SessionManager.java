@@ -0,0 +1,108 @@
+package rpulp.mouclade;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The sessions of the process, their output parsed by a bounded pool of threads and their input written by a cached
+ * pool, which holds a thread only while a write is in progress, see {@link PtyWriter}. Each session still has one
+ * thread blocked in the read of its process output: the process pipes have no non-blocking read.
+ *
+ * A session queues a task on the pool when its output has bytes, and a task parses one chunk before queueing the
+ * session again behind the others, see {@link InputPump}, so the pool serves the sessions in turn and a flooding
+ * session cannot starve the others. The parsing of a session is never spread over two threads at once.
+ *
+ * The read sizes of each session output are published over JMX while the session runs, as
+ * rpulp.mouclade:type=OutputChunkSizes,session=id, see {@link ChunkHistogramMXBean}.
+ */
+class SessionManager implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SessionManager.class);
+
+    private final ExecutorService pool;
+    private final ExecutorService writers = IoThreads.executor(IoThreads.configured(), "PtyWriter");
+    private final CopyOnWriteArrayList<Session> sessions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Session.EndListener endListener;
+
+    /**
+     * @param endListener called when the process of a session ended, once the session was removed
+     */
+    SessionManager(int threads, Session.EndListener endListener) {
+        this.endListener = endListener;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "InputPump-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info("sessions parsed by " + threads + " threads");
+    }
+
+    Session open(List<String> command) throws IOException {
+        Session session = new Session(nextId.getAndIncrement(), command, pool, writers, ended -> {
+            sessions.remove(ended);
+            unregisterMetrics(ended);
+            LOGGER.info(ended + " ended, output " + ended.outputChunkSizes());
+            endListener.onEnd(ended);
+        });
+        sessions.add(session);
+        registerMetrics(session);
+        return session;
+    }
+
+    List<Session> sessions() { return Collections.unmodifiableList(sessions); }
+
+    /** closes the session, its end listener is called once its output was parsed */
+    void close(Session session) {
+        try {
+            session.close();
+        } catch (Exception ex) {
+            LOGGER.error("closing " + session + " failed " + ex, ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Session session : sessions) {
+            close(session);
+            unregisterMetrics(session);
+        }
+        sessions.clear();
+        pool.shutdownNow();
+        writers.shutdownNow();
+    }
+
+    private static ObjectName chunkSizesName(Session session) throws JMException {
+        return new ObjectName("rpulp.mouclade:type=OutputChunkSizes,session=" + session.id());
+    }
+
+    private static void registerMetrics(Session session) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(session.outputChunkSizes(), chunkSizesName(session));
+        } catch (JMException ex) {
+            LOGGER.warn("metrics of " + session + " not published " + ex);
+        }
+    }
+
+    private static void unregisterMetrics(Session session) {
+        try {
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(chunkSizesName(session))) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(chunkSizesName(session));
+            }
+        } catch (JMException ex) {
+            LOGGER.warn("metrics of " + session + " not withdrawn " + ex);
+        }
+    }
+}
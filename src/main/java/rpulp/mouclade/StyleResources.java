@@ -0,0 +1,55 @@
+package rpulp.mouclade;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontPosture;
+import javafx.scene.text.FontWeight;
+
+/**
+ * The FX objects needed to draw the styles of a {@link StyleTable}: one Color per rgb value and one Font per
+ * bold / italic combination, created once and shared. Must be used from the FX thread.
+ */
+class StyleResources {
+
+    static final int VARIANTS = 4;
+
+    private final TIntObjectHashMap<Color> colors = new TIntObjectHashMap<>();
+    private final Font[] fonts = new Font[VARIANTS];
+
+    void setFont(String family, double size) {
+        for (int variant = 0; variant < VARIANTS; ++variant) {
+            fonts[variant] = Font.font(
+                    family,
+                    (variant & 1) != 0 ? FontWeight.BOLD : FontWeight.NORMAL,
+                    (variant & 2) != 0 ? FontPosture.ITALIC : FontPosture.REGULAR,
+                    size);
+        }
+    }
+
+    Font font(int variant) { return fonts[variant]; }
+
+    /** index of the font to draw the style flags with */
+    static int variant(int flags) {
+        return ((flags & StyleTable.BOLD) != 0 ? 1 : 0) | ((flags & StyleTable.ITALIC) != 0 ? 2 : 0);
+    }
+
+    /** the foreground to draw the style with, faint and invisible applied */
+    static int fgRgb(StyleTable table, int style) {
+        final int flags = table.flags(style);
+        if ((flags & StyleTable.INVISIBLE) != 0) {
+            return table.bgRgb(style);
+        }
+        final int rgb = table.fgRgb(style);
+        return (flags & StyleTable.FAINT) != 0 ? (rgb >>> 1) & 0x7f7f7f : rgb;
+    }
+
+    Color color(int rgb) {
+        Color color = colors.get(rgb);
+        if (color == null) {
+            color = Color.rgb((rgb >>> 16) & 0xff, (rgb >>> 8) & 0xff, rgb & 0xff);
+            colors.put(rgb, color);
+        }
+        return color;
+    }
+}
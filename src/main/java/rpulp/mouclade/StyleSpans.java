@@ -0,0 +1,65 @@
+package rpulp.mouclade;
+
+import java.util.BitSet;
+
+/**
+ * Per row runs of cells sharing a style: a renderer draws a run with one background and one string.
+ *
+ * Rows are indexed by physical row, see {@link TerminalModel#rowStart(int)}, so scrolling keeps the runs of the rows
+ * that moved. Writing to a row only marks its runs stale, they are rebuilt when the renderer asks for them, at most
+ * once per frame however many writes the row got.
+ *
+ * The runs of a row are packed as [run count, (start column, length, style id)*].
+ */
+class StyleSpans {
+
+    static final int SPAN_SIZE = 3;
+
+    private int[][] rows = new int[0][];
+    private final BitSet stale = new BitSet(128);
+
+    void resize(int height) {
+        rows = new int[height][];
+        stale.set(0, height);
+    }
+
+    void invalidate(int physicalRow) {
+        stale.set(physicalRow);
+    }
+
+    int[] row(int physicalRow, int[] styles, int rowStart, int width) {
+        int[] spans = rows[physicalRow];
+        if (spans == null || stale.get(physicalRow)) {
+            spans = build(spans, styles, rowStart, width);
+            rows[physicalRow] = spans;
+            stale.clear(physicalRow);
+        }
+        return spans;
+    }
+
+    private static int[] build(int[] spans, int[] styles, int rowStart, int width) {
+        int count = 0;
+        for (int xx = 0; xx < width; ++xx) {
+            if (xx == 0 || styles[rowStart + xx] != styles[rowStart + xx - 1]) {
+                ++count;
+            }
+        }
+        final int size = 1 + count * SPAN_SIZE;
+        if (spans == null || spans.length < size) {
+            spans = new int[size];
+        }
+        spans[0] = count;
+        int at = 1 - SPAN_SIZE;
+        for (int xx = 0; xx < width; ++xx) {
+            final int style = styles[rowStart + xx];
+            if (xx == 0 || style != styles[rowStart + xx - 1]) {
+                at += SPAN_SIZE;
+                spans[at] = xx;
+                spans[at + 1] = 0;
+                spans[at + 2] = style;
+            }
+            ++spans[at + 1];
+        }
+        return spans;
+    }
+}
@@ -0,0 +1,112 @@
+package rpulp.mouclade;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Interned cell styles: each distinct (foreground, background, flags) gets an int id, cells only store the id.
+ *
+ * A color is 0 for the default color, {@link #INDEXED} | index for the 256 colors palette or {@link #RGB} | rgb for
+ * 24 bit colors. Id 0 is the default style.
+ */
+class StyleTable {
+
+    static final int DEFAULT = 0;
+
+    static final int INDEXED = 1 << 24;
+    static final int RGB = 2 << 24;
+    private static final int COLOR_TYPE_MASK = 3 << 24;
+
+    static final int BOLD = 1;
+    static final int FAINT = 1 << 1;
+    static final int ITALIC = 1 << 2;
+    static final int UNDERLINE = 1 << 3;
+    static final int BLINK = 1 << 4;
+    static final int INVERSE = 1 << 5;
+    static final int INVISIBLE = 1 << 6;
+    static final int STRIKE = 1 << 7;
+
+    static final int DEFAULT_FG_RGB = 0xffffff;
+    static final int DEFAULT_BG_RGB = 0x000000;
+
+    // past that many styles, new ones lose their colors (24 bit gradients could otherwise grow the table forever)
+    private static final int MAX_STYLES = 1 << 20;
+
+    private static final int[] PALETTE = buildPalette();
+
+    private long[] styles = new long[64];
+    private int size = 1; // styles[0] == 0 is the default style
+    private final TLongIntHashMap ids = new TLongIntHashMap(64, 0.5f, -1L, -1);
+
+    StyleTable() {
+        ids.put(0L, DEFAULT);
+    }
+
+    int size() { return size; }
+
+    int intern(int fg, int bg, int flags) {
+        final long key = key(fg, bg, flags);
+        int id = ids.get(key);
+        if (id >= 0) {
+            return id;
+        }
+        if (size == MAX_STYLES) {
+            return (fg == 0 && bg == 0) ? DEFAULT : intern(0, 0, flags);
+        }
+        if (size == styles.length) {
+            styles = Arrays.copyOf(styles, size * 2);
+        }
+        id = size++;
+        styles[id] = key;
+        ids.put(key, id);
+        return id;
+    }
+
+    int fg(int id) { return (int) (styles[id] >>> 34) & 0x3ffffff; }
+
+    int bg(int id) { return (int) (styles[id] >>> 8) & 0x3ffffff; }
+
+    int flags(int id) { return (int) styles[id] & 0xff; }
+
+    /** the foreground color to draw with, as 0xRRGGBB, inverse applied */
+    int fgRgb(int id) {
+        return (flags(id) & INVERSE) == 0 ? toRgb(fg(id), DEFAULT_FG_RGB) : toRgb(bg(id), DEFAULT_BG_RGB);
+    }
+
+    /** the background color to draw with, as 0xRRGGBB, inverse applied */
+    int bgRgb(int id) {
+        return (flags(id) & INVERSE) == 0 ? toRgb(bg(id), DEFAULT_BG_RGB) : toRgb(fg(id), DEFAULT_FG_RGB);
+    }
+
+    static int toRgb(int color, int defaultRgb) {
+        switch (color & COLOR_TYPE_MASK) {
+            case INDEXED: return PALETTE[color & 0xff];
+            case RGB: return color & 0xffffff;
+            default: return defaultRgb;
+        }
+    }
+
+    private static long key(int fg, int bg, int flags) {
+        return ((long) fg << 34) | ((long) bg << 8) | (flags & 0xff);
+    }
+
+    /** the xterm 256 colors palette */
+    private static int[] buildPalette() {
+        final int[] palette = new int[256];
+        final int[] base = {
+                0x000000, 0xcd0000, 0x00cd00, 0xcdcd00, 0x0000ee, 0xcd00cd, 0x00cdcd, 0xe5e5e5,
+                0x7f7f7f, 0xff0000, 0x00ff00, 0xffff00, 0x5c5cff, 0xff00ff, 0x00ffff, 0xffffff
+        };
+        System.arraycopy(base, 0, palette, 0, 16);
+        final int[] levels = {0x00, 0x5f, 0x87, 0xaf, 0xd7, 0xff};
+        for (int ii = 0; ii < 216; ++ii) {
+            palette[16 + ii] = (levels[ii / 36] << 16) | (levels[(ii / 6) % 6] << 8) | levels[ii % 6];
+        }
+        for (int ii = 0; ii < 24; ++ii) {
+            final int level = 8 + ii * 10;
+            palette[232 + ii] = (level << 16) | (level << 8) | level;
+        }
+        return palette;
+    }
+}
@@ -1,29 +1,118 @@
 package rpulp.mouclade;
 
 import java.util.Arrays;
-
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The screen cells and the caret.
+ *
+ * The model is guarded by its own monitor: the {@link InputPump} tasks write to it under the monitor, the FX thread
+ * drains the damage and reads the cells under it, see {@link #drainDamage(Listener)}.
+ */
 class TerminalModel implements InputParser.Listener{
 
+    /**
+     * receives the damage accumulated by the model, see {@link #drainDamage(Listener)}
+     */
     interface Listener {
-        void onCellUpdate(int x, int y);
+        /**
+         * the rows top..bottom (inclusive) moved up by n when n > 0, down by -n when n < 0
+         *
+         * Called before the row updates of the same drain, which cover the rows the scroll exposed.
+         */
+        void onScroll(int top, int bottom, int n);
+
+        void onRowUpdate(int y);
 
         void onFullUpdate();
     }
 
+    interface ResizeListener {
+        void onResize(int width, int height);
+    }
+
+    // how long a synchronized update (mode 2026) may hold back the damage
+    private static final long SYNC_UPDATE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(150);
+    private static final long DEFAULT_FLOOD_FRAME_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
     private int width = 0;
     private int height = 0;
 
-    private char[] chars = new char[0];
-    private int[] fgColors = new int[0];
-    private int[] bgColors = new int[0];
-    private int[] attrs = new int[0];
+    /**
+     * the cells of one screen, the primary one or the alternate one of the full screen applications
+     */
+    private static final class Screen {
+        final int[] codePoints;
+        final int[] styles; // ids in styleTable
+        // rowMap[y] is the physical row displayed as row y, scrolling rotates the map instead of moving cells
+        final int[] rowMap;
+        // by physical row, true if the row is soft wrapped: the line goes on on the next row
+        final boolean[] wrapped;
+        final StyleSpans styleSpans = new StyleSpans();
+
+        Screen(int width, int height) {
+            codePoints = new int[width * height];
+            styles = new int[width * height];
+            rowMap = new int[height];
+            wrapped = new boolean[height];
+            for (int yy = 0; yy < height; ++yy) {
+                rowMap[yy] = yy;
+            }
+            Arrays.fill(codePoints, ' ');
+            styleSpans.resize(height);
+        }
+    }
+
+    private Screen primary;
+    private Screen alternate;
+
+    // the active screen, its arrays are cached in the fields below
+    private Screen screen;
+    private int[] codePoints;
+    private int[] styles;
+    private int[] rowMap;
+    private StyleSpans styleSpans;
+    private int[] rotated = new int[0]; // scratch for rotate()
+
+    private final StyleTable styleTable = new StyleTable();
+    private int pen = StyleTable.DEFAULT; // style of the written characters
+
+    // scroll region, inclusive
+    private int scrollTop = 0;
+    private int scrollBottom = 0;
 
     private int caretX = 0;
     private int caretY = 0;
 
-    private Listener listener;
+    // DECSC
+    private int savedX = 0;
+    private int savedY = 0;
+    private int savedPen = StyleTable.DEFAULT;
+
+    private final Scrollback scrollback;
+    private final HistoryLayout historyLayout;
+
+    private final Damage damage = new Damage();
+
+    // while a synchronized update is running, System.nanoTime() past which the damage is drained anyway
+    private boolean syncUpdate = false;
+    private long syncUpdateDeadline = 0;
+
+    // flood control: once a screen worth of rows scrolled since the last drain, drains are spaced by the interval
+    private long floodFrameIntervalNanos = DEFAULT_FLOOD_FRAME_INTERVAL_NANOS;
+    private int scrolledRows = 0;
+    private long lastDrain = 0;
+
+    // read by the FX thread without the monitor, when it starts a paste and encodes the keys
+    private volatile boolean bracketedPaste = false;
+    private volatile boolean applicationCursor = false;
+    private volatile boolean applicationKeypad = false;
+
+    private volatile ResizeListener resizeListener;
 
-    TerminalModel() {
+    TerminalModel(Scrollback scrollback) {
+        this.scrollback = scrollback;
+        this.historyLayout = new HistoryLayout(scrollback);
         resize(80, 40);
     }
 
@@ -31,46 +120,340 @@ class TerminalModel implements InputParser.Listener{
 
     int height() { return height; }
 
-    char[] chars() { return chars; }
+    int[] codePoints() { return codePoints; }
 
-    int[] fgColors() { return fgColors; }
+    int[] styles() { return styles; }
 
-    int[] bgColors() { return bgColors; }
+    StyleTable styleTable() { return styleTable; }
 
-    int[] attrs() { return attrs; }
+    Scrollback scrollback() { return scrollback; }
 
-    void resize(int width, int height) {
+    boolean isAlternateScreen() { return screen == alternate; }
+
+    /** the application asked for the pastes to be wrapped in markers, mode 2004 */
+    boolean isBracketedPaste() { return bracketedPaste; }
+
+    /** the cursor keys send SS3 sequences, DECCKM (mode 1) */
+    boolean isApplicationCursor() { return applicationCursor; }
+
+    /** the keypad sends SS3 sequences, DECKPAM or DECNKM (mode 66) */
+    boolean isApplicationKeypad() { return applicationKeypad; }
+
+    /**
+     * the runs of cells of row yy sharing a style, packed as described in {@link StyleSpans}
+     *
+     * Must be called with the model monitor held, the array is reused once the row changes.
+     */
+    int[] styleSpans(int yy) {
+        return styleSpans.row(physicalRow(yy), styles, rowStart(yy), width);
+    }
+
+    /**
+     * reads row k of the history as displayed at the current width, row 0 being the one just above the screen
+     *
+     * The history is rewrapped lazily, see {@link HistoryLayout}. No view scrolls back into the history yet, this is
+     * the read side a history viewport will use.
+     *
+     * @return false if the history has fewer rows
+     */
+    synchronized boolean readHistoryRow(int k, int[] codePoints, int[] styles, int offset) {
+        return historyLayout.readRow(k, codePoints, styles, offset);
+    }
+
+    /**
+     * changes the screen size, the soft wrapped lines of the primary screen are rewrapped at the new width
+     *
+     * The alternate screen is blanked, the full screen applications redraw it on the size change. The resize listener
+     * is called once the monitor is released, so the caller must not hold it.
+     *
+     * @return false if the size did not change
+     */
+    boolean resize(int width, int height) {
+        if (!resizeScreens(width, height)) {
+            return false;
+        }
+        final ResizeListener listener = resizeListener;
+        if (listener != null) {
+            listener.onResize(width, height);
+        }
+        return true;
+    }
+
+    private synchronized boolean resizeScreens(int width, int height) {
+        if (width == this.width && height == this.height) {
+            return false;
+        }
+        final Screen oldPrimary = primary;
+        final int oldWidth = this.width;
+        final int oldHeight = this.height;
+        final boolean wasAlternate = screen != null && isAlternateScreen();
         this.width = width;
         this.height = height;
-        int size = width * height;
-        chars = new char[size];
-        fgColors = new int[size];
-        bgColors = new int[size];
-        attrs = new int[size];
-        Arrays.fill(chars, ' ');
+        primary = new Screen(width, height);
+        alternate = new Screen(width, height);
+        activate(wasAlternate ? alternate : primary);
+        rotated = new int[height];
+        scrollTop = 0;
+        scrollBottom = height - 1;
+        historyLayout.setWidth(width);
+        if (oldPrimary != null) {
+            // the caret of the primary screen is the saved one while the alternate screen is displayed
+            final int[] caret = wasAlternate ? new int[]{savedX, savedY} : new int[]{caretX, caretY};
+            reflow(oldPrimary, oldWidth, oldHeight, caret);
+            if (wasAlternate) {
+                savedX = caret[0];
+                savedY = caret[1];
+            } else {
+                caretX = caret[0];
+                caretY = caret[1];
+            }
+        }
+        caretX = Math.min(caretX, width - 1);
+        caretY = Math.min(caretY, height - 1);
+        return true;
+    }
+
+    /**
+     * rewraps the lines of the old primary screen at the current width into the new primary screen, the rows that no
+     * longer fit above the caret go to the history
+     *
+     * @param caret x, y of the caret on the old screen, updated to the new screen
+     */
+    private void reflow(Screen old, int oldWidth, int oldHeight, int[] caret) {
+        // the blank rows below the caret are dropped
+        int lastRow = Math.min(caret[1], oldHeight - 1);
+        for (int yy = oldHeight - 1; yy > lastRow; --yy) {
+            if (trimmedLength(old, old.rowMap[yy] * oldWidth, oldWidth) > 0) {
+                lastRow = yy;
+                break;
+            }
+        }
+
+        // the lines, their cells laid end to end
+        final int[] cells = new int[oldWidth * (lastRow + 1)];
+        final int[] cellStyles = new int[cells.length];
+        final int[] lineEnds = new int[lastRow + 1];
+        int lineCount = 0;
+        int len = 0;
+        int caretLine = 0;
+        int caretOffset = 0;
+        for (int yy = 0; yy <= lastRow; ++yy) {
+            final int row = old.rowMap[yy];
+            final boolean wrapped = old.wrapped[row] && yy < lastRow;
+            final int rowLen = wrapped ? oldWidth : trimmedLength(old, row * oldWidth, oldWidth);
+            if (yy == caret[1]) {
+                caretLine = lineCount;
+                caretOffset = len + caret[0];
+            }
+            System.arraycopy(old.codePoints, row * oldWidth, cells, len, rowLen);
+            System.arraycopy(old.styles, row * oldWidth, cellStyles, len, rowLen);
+            len += rowLen;
+            if (!wrapped) {
+                lineEnds[lineCount++] = len;
+            }
+        }
+
+        // the rows of the lines at the new width
+        int rowCount = 0;
+        int caretRow = 0;
+        for (int line = 0; line < lineCount; ++line) {
+            final int lineBeg = line == 0 ? 0 : lineEnds[line - 1];
+            int rows = Math.max(1, (lineEnds[line] - lineBeg + width - 1) / width);
+            if (line == caretLine) {
+                rows = Math.max(rows, (caretOffset - lineBeg) / width + 1);
+                caretRow = rowCount + (caretOffset - lineBeg) / width;
+                caret[0] = (caretOffset - lineBeg) % width;
+            }
+            rowCount += rows;
+        }
+        final int firstRow = Math.min(Math.max(0, rowCount - height), caretRow);
+        caret[1] = caretRow - firstRow;
+
+        final int[] pushedCodePoints = new int[width];
+        final int[] pushedStyles = new int[width];
+        int row = 0;
+        for (int line = 0; line < lineCount; ++line) {
+            final int lineBeg = line == 0 ? 0 : lineEnds[line - 1];
+            final int lineEnd = lineEnds[line];
+            int rows = Math.max(1, (lineEnd - lineBeg + width - 1) / width);
+            if (line == caretLine) {
+                rows = Math.max(rows, (caretOffset - lineBeg) / width + 1);
+            }
+            for (int rr = 0; rr < rows && row < firstRow + height; ++rr, ++row) {
+                final int beg = Math.min(lineBeg + rr * width, lineEnd);
+                final int count = Math.min(width, lineEnd - beg);
+                final boolean wrapped = rr < rows - 1;
+                if (row < firstRow) {
+                    Arrays.fill(pushedCodePoints, ' ');
+                    Arrays.fill(pushedStyles, StyleTable.DEFAULT);
+                    System.arraycopy(cells, beg, pushedCodePoints, 0, count);
+                    System.arraycopy(cellStyles, beg, pushedStyles, 0, count);
+                    scrollback.push(pushedCodePoints, pushedStyles, 0, width, wrapped);
+                } else {
+                    final int yy = row - firstRow;
+                    System.arraycopy(cells, beg, primary.codePoints, yy * width, count);
+                    System.arraycopy(cellStyles, beg, primary.styles, yy * width, count);
+                    primary.wrapped[yy] = wrapped;
+                }
+            }
+        }
     }
 
-    int at(int xx, int yy) { return yy * width + xx; }
+    /** number of cells of the row up to the last non blank one */
+    private static int trimmedLength(Screen screen, int rowStart, int width) {
+        int len = width;
+        while (len > 0 && screen.codePoints[rowStart + len - 1] == ' '
+                && screen.styles[rowStart + len - 1] == StyleTable.DEFAULT) {
+            --len;
+        }
+        return len;
+    }
 
-    void setListener(Listener listener) {
-        this.listener = listener;
+    /** the minimum time between two drains while the output floods the screen */
+    synchronized void setFloodFrameInterval(long nanos) {
+        this.floodFrameIntervalNanos = nanos;
     }
 
-    private void updateCell(int x, int y) {
-        if (listener != null) {
-            listener.onCellUpdate(x, y);
+    /** the views must paint everything again */
+    synchronized void damageAll() {
+        damage.all();
+    }
+
+    /** told of the size changes, to forward them to the pty */
+    void setResizeListener(ResizeListener resizeListener) {
+        this.resizeListener = resizeListener;
+    }
+
+    /** switching screens only swaps the array references, neither screen is copied */
+    private void activate(Screen screen) {
+        this.screen = screen;
+        this.codePoints = screen.codePoints;
+        this.styles = screen.styles;
+        this.rowMap = screen.rowMap;
+        this.styleSpans = screen.styleSpans;
+        damage.all();
+    }
+
+    int at(int xx, int yy) { return rowStart(yy) + xx; }
+
+    /** offset of the first cell of row yy, the cells of a row are contiguous in the arrays */
+    int rowStart(int yy) {
+        return physicalRow(yy) * width;
+    }
+
+    private int physicalRow(int yy) {
+        return rowMap[yy];
+    }
+
+    private void rowChanged(int yy) {
+        damage.row(yy);
+        styleSpans.invalidate(physicalRow(yy));
+    }
+
+    /**
+     * reports the rows changed since the last call, the view calls it at most once per frame
+     *
+     * The listener is called with the model monitor held, it can safely read the cells.
+     *
+     * During a synchronized update the damage is held back until the application ends it, or until it times out.
+     * While the output floods the screen, frames are skipped so the view only paints the latest state at a capped
+     * rate and the FX thread stays free for the input events.
+     *
+     * @return false if nothing changed
+     */
+    synchronized boolean drainDamage(Listener listener) {
+        return drainDamage(listener, System.nanoTime());
+    }
+
+    synchronized boolean drainDamage(Listener listener, long now) {
+        if (damage.isEmpty()) {
+            return false;
+        }
+        if (syncUpdate) {
+            if (now - syncUpdateDeadline < 0) {
+                return false;
+            }
+            syncUpdate = false;
         }
+        if (scrolledRows >= height && now - lastDrain < floodFrameIntervalNanos) {
+            return false;
+        }
+        scrolledRows = 0;
+        lastDrain = now;
+        damage.drain(listener);
+        return true;
+    }
+
+    /**
+     * moves the rows top..bottom (inclusive) up by n when n > 0, down by -n when n < 0, the rows moved out of the
+     * region are blanked and reused for the exposed rows
+     *
+     * Only the row map changes, the cells stay in place.
+     *
+     * @param toHistory push the rows moved out at the top to the scrollback
+     */
+    private void rotate(int top, int bottom, int n, boolean toHistory) {
+        final int rows = bottom - top + 1;
+        final int count = Math.min(Math.abs(n), rows);
+        if (count == 0) {
+            return;
+        }
+        final int exposedTop;
+        if (n > 0) {
+            if (toHistory) {
+                for (int yy = top; yy < top + count; ++yy) {
+                    scrollback.push(codePoints, styles, rowStart(yy), width, screen.wrapped[physicalRow(yy)]);
+                }
+            }
+            System.arraycopy(rowMap, top, rotated, 0, count);
+            System.arraycopy(rowMap, top + count, rowMap, top, rows - count);
+            System.arraycopy(rotated, 0, rowMap, bottom - count + 1, count);
+            exposedTop = bottom - count + 1;
+        } else {
+            System.arraycopy(rowMap, bottom - count + 1, rotated, 0, count);
+            System.arraycopy(rowMap, top, rowMap, top + count, rows - count);
+            System.arraycopy(rotated, 0, rowMap, top, count);
+            exposedTop = top;
+        }
+        final int style = eraseStyle();
+        for (int yy = exposedTop; yy < exposedTop + count; ++yy) {
+            final int beg = rowStart(yy);
+            Arrays.fill(codePoints, beg, beg + width, ' ');
+            Arrays.fill(styles, beg, beg + width, style);
+            styleSpans.invalidate(physicalRow(yy));
+            screen.wrapped[physicalRow(yy)] = false;
+        }
+        damage.scroll(top, bottom, n > 0 ? count : -count);
+        scrolledRows += count;
     }
 
-    //FIXME: ring buffer instead ?
-    private void badMethod() {
-        System.arraycopy(chars, width, chars, 0, chars.length - width);
-        Arrays.fill(chars, chars.length - width, chars.length, ' ');
-        listener.onFullUpdate();
+    /** the alternate screen has no history */
+    private boolean scrollsToHistory() {
+        return scrollTop == 0 && screen == primary;
+    }
+
+    private boolean caretInScrollRegion() {
+        return caretY >= scrollTop && caretY <= scrollBottom;
+    }
+
+    private void eraseInRow(int yy, int fromX, int toX) {
+        int beg = rowStart(yy);
+        Arrays.fill(codePoints, beg + fromX, beg + toX, ' ');
+        if (toX == width) {
+            screen.wrapped[physicalRow(yy)] = false;
+        }
+        Arrays.fill(styles, beg + fromX, beg + toX, eraseStyle());
+        rowChanged(yy);
+    }
+
+    /** erased cells keep the background of the pen */
+    private int eraseStyle() {
+        int bg = styleTable.bg(pen);
+        return bg == 0 ? StyleTable.DEFAULT : styleTable.intern(0, bg, 0);
     }
 
     @Override public void addChar(int byt) {
-        char car = (char) byt;
+        int car = byt;
         switch (car) {
             case 0x07: break;  //bell
             case 0x08: backspace(); break;
@@ -88,10 +471,29 @@ class TerminalModel implements InputParser.Listener{
         }
     }
 
-    private void addNormalChar(char car) {
+    @Override public void addChars(int[] buf, int off, int len) {
+        final int end = off + len;
+        int idx = off;
+        while (idx < end) {
+            // copy what fits on the caret row
+            final int count = Math.min(end - idx, width - caretX);
+            final int at = at(caretX, caretY);
+            System.arraycopy(buf, idx, codePoints, at, count);
+            Arrays.fill(styles, at, at + count, pen);
+            rowChanged(caretY);
+            idx += count;
+            caretX += count;
+            if (caretX == width) {
+                autoWrap();
+            }
+        }
+    }
+
+    private void addNormalChar(int car) {
         int at = at(caretX, caretY);
-        chars[at] = car;
-        updateCell(caretX, caretY);
+        codePoints[at] = car;
+        styles[at] = pen;
+        rowChanged(caretY);
         cursorNext();
     }
 
@@ -105,13 +507,20 @@ class TerminalModel implements InputParser.Listener{
     }
 
     private void lineFeed() {
-        if (caretY == height - 1) {
-            badMethod();
-        } else {
+        if (caretY == scrollBottom) {
+            rotate(scrollTop, scrollBottom, 1, scrollsToHistory());
+        } else if (caretY < height - 1) {
             ++caretY;
         }
     }
 
+    /** the caret went past the last column: the line goes on on the next row */
+    private void autoWrap() {
+        screen.wrapped[physicalRow(caretY)] = true;
+        lineFeed();
+        carriageReturn();
+    }
+
     private void carriageReturn() {
         caretX = 0;
     }
@@ -123,8 +532,7 @@ class TerminalModel implements InputParser.Listener{
     private void cursorNext() {
         ++caretX;
         if (caretX == width) {
-            lineFeed();
-            carriageReturn();
+            autoWrap();
         }
     }
 
@@ -154,74 +562,207 @@ class TerminalModel implements InputParser.Listener{
     }
 
     @Override public void cursorPosition(int row, int col) {
-        caretX = col - 1; // 1 based
-        caretY = row - 1; // 1 based
+        caretX = Math.max(0, Math.min(width - 1, col - 1)); // 1 based
+        caretY = Math.max(0, Math.min(height - 1, row - 1)); // 1 based
     }
 
     @Override public void eraseDisplay(int n) {
-        int beg;
-        int end;
         switch(n) {
             case 0:
-                beg = at(caretX, caretY);
-                end = at(width - 1, height - 1) + 1;
+                eraseInRow(caretY, caretX, width);
+                for (int yy = caretY + 1; yy < height; ++yy) {
+                    eraseInRow(yy, 0, width);
+                }
                 break;
             case 1:
-                beg = 0;
-                end = at(caretX, caretY);
+                for (int yy = 0; yy < caretY; ++yy) {
+                    eraseInRow(yy, 0, width);
+                }
+                eraseInRow(caretY, 0, caretX);
                 break;
             case 2:
-                beg = 0;
-                end = at(width - 1, height - 1) + 1;
+                for (int yy = 0; yy < height; ++yy) {
+                    eraseInRow(yy, 0, width);
+                }
                 break;
             default: return;
         }
-        for (int ii = beg; ii < end; ++ii) {
-            chars[ii] = ' ';
-        }
-        listener.onFullUpdate();
     }
 
     @Override public void eraseInLine(int n) {
-        int beg;
-        int end;
         switch(n) {
-            case 0:
-                beg = at(caretX, caretY);
-                end = at(width - 1, caretY) + 1;
-                break;
-            case 1:
-                beg = at(0, caretY);
-                end = at(caretX, caretY);
-                break;
-            case 2:
-                beg = at(0, caretY);
-                end = at(width - 1, caretY) + 1;
-                break;
+            case 0: eraseInRow(caretY, caretX, width); break;
+            case 1: eraseInRow(caretY, 0, caretX); break;
+            case 2: eraseInRow(caretY, 0, width); break;
             default: return;
         }
-        for (int ii = beg; ii < end; ++ii) {
-            chars[ii] = ' ';
-        }
-        listener.onFullUpdate();
     }
 
     @Override public void scrollUp(int n) {
+        rotate(scrollTop, scrollBottom, n, scrollsToHistory());
     }
 
     @Override public void scrollDown(int n) {
+        rotate(scrollTop, scrollBottom, -n, false);
+    }
+
+    @Override public void setScrollRegion(int top, int bottom) {
+        final int last = bottom == 0 ? height : Math.min(bottom, height);
+        if (top < 1 || top >= last) {
+            return; // the region must span 2 rows at least
+        }
+        scrollTop = top - 1; // 1 based
+        scrollBottom = last - 1;
+        caretX = 0;
+        caretY = 0;
+    }
+
+    @Override public void insertLines(int n) {
+        if (caretInScrollRegion()) {
+            rotate(caretY, scrollBottom, -n, false);
+            caretX = 0;
+        }
+    }
+
+    @Override public void deleteLines(int n) {
+        if (caretInScrollRegion()) {
+            rotate(caretY, scrollBottom, n, false);
+            caretX = 0;
+        }
     }
 
-    @Override public void selectGfxRendition(int n) {
+    @Override public void reverseIndex() {
+        if (caretY == scrollTop) {
+            rotate(scrollTop, scrollBottom, -1, false);
+        } else if (caretY > 0) {
+            --caretY;
+        }
+    }
+
+    @Override public void selectGfxRendition(int[] params, int count) {
+        int fg = styleTable.fg(pen);
+        int bg = styleTable.bg(pen);
+        int flags = styleTable.flags(pen);
+        for (int ii = 0; ii < count; ++ii) {
+            final int param = params[ii];
+            switch (param) {
+                case 0: fg = 0; bg = 0; flags = 0; break;
+                case 1: flags |= StyleTable.BOLD; break;
+                case 2: flags |= StyleTable.FAINT; break;
+                case 3: flags |= StyleTable.ITALIC; break;
+                case 4: case 21: flags |= StyleTable.UNDERLINE; break;
+                case 5: case 6: flags |= StyleTable.BLINK; break;
+                case 7: flags |= StyleTable.INVERSE; break;
+                case 8: flags |= StyleTable.INVISIBLE; break;
+                case 9: flags |= StyleTable.STRIKE; break;
+                case 22: flags &= ~(StyleTable.BOLD | StyleTable.FAINT); break;
+                case 23: flags &= ~StyleTable.ITALIC; break;
+                case 24: flags &= ~StyleTable.UNDERLINE; break;
+                case 25: flags &= ~StyleTable.BLINK; break;
+                case 27: flags &= ~StyleTable.INVERSE; break;
+                case 28: flags &= ~StyleTable.INVISIBLE; break;
+                case 29: flags &= ~StyleTable.STRIKE; break;
+                case 38: case 48: {
+                    // 38;5;index or 38;2;r;g;b
+                    int color = 0;
+                    if (ii + 2 < count && params[ii + 1] == 5) {
+                        color = StyleTable.INDEXED | (params[ii + 2] & 0xff);
+                        ii += 2;
+                    } else if (ii + 4 < count && params[ii + 1] == 2) {
+                        color = StyleTable.RGB | ((params[ii + 2] & 0xff) << 16) | ((params[ii + 3] & 0xff) << 8) | (params[ii + 4] & 0xff);
+                        ii += 4;
+                    } else {
+                        ii = count; // malformed, drop the rest
+                    }
+                    if (param == 38) {
+                        fg = color;
+                    } else {
+                        bg = color;
+                    }
+                    break;
+                }
+                case 39: fg = 0; break;
+                case 49: bg = 0; break;
+                default:
+                    if (param >= 30 && param <= 37) {
+                        fg = StyleTable.INDEXED | (param - 30);
+                    } else if (param >= 40 && param <= 47) {
+                        bg = StyleTable.INDEXED | (param - 40);
+                    } else if (param >= 90 && param <= 97) {
+                        fg = StyleTable.INDEXED | (param - 90 + 8);
+                    } else if (param >= 100 && param <= 107) {
+                        bg = StyleTable.INDEXED | (param - 100 + 8);
+                    }
+            }
+        }
+        pen = styleTable.intern(fg, bg, flags);
     }
 
     @Override public void auxPort(int n) {
     }
 
     @Override public void saveCursorPos() {
+        savedX = caretX;
+        savedY = caretY;
+        savedPen = pen;
     }
 
     @Override public void restoreCursorPos() {
+        caretX = Math.min(savedX, width - 1);
+        caretY = Math.min(savedY, height - 1);
+        pen = savedPen;
+    }
+
+    @Override public void setKeypadMode(boolean application) {
+        applicationKeypad = application;
+    }
+
+    @Override public void setPrivateMode(int mode, boolean enabled) {
+        switch (mode) {
+            case 1:
+                applicationCursor = enabled;
+                break;
+            case 66:
+                applicationKeypad = enabled;
+                break;
+            case 47:
+                useAlternateScreen(enabled);
+                break;
+            case 1047:
+                if (enabled) {
+                    useAlternateScreen(true);
+                    eraseDisplay(2);
+                } else {
+                    useAlternateScreen(false);
+                }
+                break;
+            case 2004:
+                bracketedPaste = enabled;
+                break;
+            case 2026:
+                syncUpdate = enabled;
+                syncUpdateDeadline = System.nanoTime() + SYNC_UPDATE_TIMEOUT_NANOS;
+                break;
+            case 1049:
+                if (enabled) {
+                    if (!isAlternateScreen()) {
+                        saveCursorPos();
+                    }
+                    useAlternateScreen(true);
+                    eraseDisplay(2);
+                } else if (isAlternateScreen()) {
+                    useAlternateScreen(false);
+                    restoreCursorPos();
+                }
+                break;
+        }
+    }
+
+    private void useAlternateScreen(boolean enabled) {
+        Screen target = enabled ? alternate : primary;
+        if (screen != target) {
+            activate(target);
+        }
     }
 
     @Override public void hideCursor() {
@@ -1,113 +1,102 @@
 package rpulp.mouclade;
 
-import javafx.application.Platform;
+import javafx.geometry.VPos;
 import javafx.scene.Group;
-import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 
 import java.util.ArrayList;
-
-class TerminalView {
-
-    private class Cell {
-        final Group group = new Group();
-        final Text text;
-        final Rectangle bg;
-
-        Cell(double cellW, double cellH) {
-            this.text = new Text(" ");
-            this.text.setFill(Color.WHITE);
-            this.bg = new Rectangle(0, 0, cellW, cellH);
-            this.bg.setFill(Color.BLACK);
-            this.group.getChildren().add(this.bg);
-            this.group.getChildren().add(text);
-            this.bg.toBack();
+import java.util.Collections;
+
+/**
+ * Draws the terminal with scene graph nodes: one background rectangle and one text node per run of cells sharing a
+ * style, see {@link TerminalModel#styleSpans(int)}.
+ *
+ * A scroll moves the line groups, only the exposed lines are updated.
+ */
+class TerminalView extends AbstractView {
+
+    private class Span {
+        final Text text = new Text();
+        final Rectangle bg = new Rectangle(0, 0, 0, 0);
+        int style = -1; // last style applied to the nodes
+
+        Span() {
+            text.setTextOrigin(VPos.TOP);
         }
 
-        void setSize(Font font, double cellW, double cellH) {
-            text.setFont(font);
-            bg.setWidth(cellW);
-            bg.setHeight(cellH);
+        void setVisible(boolean visible) {
+            text.setVisible(visible);
+            bg.setVisible(visible);
         }
     }
 
     private class Line {
         private final Group group = new Group();
-        private final ArrayList<Cell> cells = new ArrayList<>(128);
-
-        void resize(int len, double cellW, double cellH) {
-            if (cells.size() == len) {
-                return;
-
-            } else if (cells.size() > len) {
-                // too long
-                group.getChildren().remove(len, group.getChildren().size());
-                while (cells.size() > len) {
-                    cells.remove(cells.size() - 1);
-                }
-
-            } else {
-                // too small
-                while (cells.size() < len) {
-                    Cell cell = new Cell(cellW, cellH);
-                    cell.group.setTranslateX(cells.size() * cellW);
-                    cells.add(cell);
-                    group.getChildren().add(cell.group);
-                }
+        private final Group backgrounds = new Group();
+        private final Group texts = new Group();
+        private final ArrayList<Span> spans = new ArrayList<>(8);
+        private int visibleSpans = 0;
+
+        Line() {
+            group.getChildren().addAll(backgrounds, texts);
+        }
+
+        Span span(int idx) {
+            while (spans.size() <= idx) {
+                Span span = new Span();
+                spans.add(span);
+                backgrounds.getChildren().add(span.bg);
+                texts.getChildren().add(span.text);
             }
+            return spans.get(idx);
         }
 
-        void setFont(Font font, double cellW, double cellH) {
-            for(int xx = 0; xx < cells.size(); ++xx) {
-                Cell cell = cells.get(xx);
-                cell.setSize(font, cellW, cellH);
-                cell.group.setTranslateX(xx * cellW);
+        /** hides the spans past count, they are kept for the next update */
+        void setVisibleSpans(int count) {
+            for (int ii = count; ii < visibleSpans; ++ii) {
+                spans.get(ii).setVisible(false);
+            }
+            visibleSpans = count;
+        }
+
+        void clearStyles() {
+            for (Span span : spans) {
+                span.style = -1;
             }
         }
     }
 
-    private final TerminalModel model;
     private final Group group = new Group();
     private final ArrayList<Line> lines = new ArrayList<>(128);
-    private Font font;
-    private double cellW;
-    private double cellH;
+    private final StyleResources resources = new StyleResources();
 
     TerminalView(TerminalModel model) {
-        this.model = model;
-        resize(model.width(), model.height());
+        super(model);
         setFont("Monospaced", 18);
-        model.setListener(new TerminalModel.Listener() {
-            @Override
-            public void onCellUpdate(int x, int y) {
-                Platform.runLater(() -> updateCell(x, y));
-            }
-
-            @Override
-            public void onFullUpdate() {
-                Platform.runLater(() -> updateAllCells());
-            }
-        });
+        resize(model.width(), model.height());
+        start();
     }
 
-    Group node() { return group; }
+    @Override
+    public Group node() { return group; }
 
     private void setFont(String family, double size) {
-        font = Font.font(family, size);
+        resources.setFont(family, size);
         Text text = new Text(" ");
-        text.setFont(font);
+        text.setFont(resources.font(0));
         cellW = text.getLayoutBounds().getWidth();
         cellH = text.getLayoutBounds().getHeight();
-        for(int yy = 0; yy < lines.size(); ++yy) {
+        for (int yy = 0; yy < lines.size(); ++yy) {
             Line line = lines.get(yy);
             line.group.translateYProperty().set(yy * cellH);
-            line.setFont(font, cellW, cellH);
+            line.clearStyles();
         }
     }
 
-    private void resize(int width, int height) {
+    @Override
+    void resize(int width, int height) {
         if (lines.size() > height) {
             group.getChildren().remove(height, group.getChildren().size());
             while (lines.size() > height) {
@@ -116,25 +105,55 @@ class TerminalView {
         } else if (lines.size() < height) {
             while (lines.size() < height) {
                 Line line = new Line();
+                line.group.translateYProperty().set(lines.size() * cellH);
                 lines.add(line);
                 group.getChildren().add(line.group);
             }
         }
-        for(Line line : lines) {
-            line.resize(width, cellW, cellH);
-        }
     }
 
-    public void updateCell(int x, int y) {
-        Cell cell = lines.get(y).cells.get(x);
-        cell.text.setText(new String(model.chars(), model.at(x, y), 1));
+    @Override
+    void scroll(int top, int bottom, int n) {
+        Collections.rotate(lines.subList(top, bottom + 1), -n);
+        for (int yy = top; yy <= bottom; ++yy) {
+            lines.get(yy).group.translateYProperty().set(yy * cellH);
+        }
     }
 
-    public void updateAllCells() {
-        for (int yy = 0; yy < model.height(); ++yy) {
-            for (int xx = 0; xx < model.width(); ++xx) {
-                updateCell(xx, yy);
+    @Override
+    public void updateRow(int y) {
+        final Line line = lines.get(y);
+        final int[] codePoints = model.codePoints();
+        final int rowStart = model.rowStart(y);
+        final int[] spans = model.styleSpans(y);
+        final int count = spans[0];
+        for (int ii = 0; ii < count; ++ii) {
+            final int at = 1 + ii * StyleSpans.SPAN_SIZE;
+            final int start = spans[at];
+            final int len = spans[at + 1];
+            final int style = spans[at + 2];
+            final Span span = line.span(ii);
+            span.setVisible(true);
+            span.text.setText(new String(codePoints, rowStart + start, len));
+            span.text.setX(start * cellW);
+            span.bg.setX(start * cellW);
+            span.bg.setWidth(len * cellW);
+            span.bg.setHeight(cellH);
+            if (style != span.style) {
+                updateStyle(span, style);
             }
         }
+        line.setVisibleSpans(count);
+    }
+
+    private void updateStyle(Span span, int style) {
+        final StyleTable styleTable = model.styleTable();
+        final int flags = styleTable.flags(style);
+        span.style = style;
+        span.text.setFill(resources.color(StyleResources.fgRgb(styleTable, style)));
+        span.text.setFont(resources.font(StyleResources.variant(flags)));
+        span.text.setUnderline((flags & StyleTable.UNDERLINE) != 0);
+        span.text.setStrikethrough((flags & StyleTable.STRIKE) != 0);
+        span.bg.setFill(resources.color(styleTable.bgRgb(style)));
     }
 }
@@ -0,0 +1,144 @@
+package rpulp.mouclade;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * Per block bloom filters of the trigrams of the history rows, to skip the blocks that cannot match a search.
+ *
+ * Rows are identified by their id in the {@link Scrollback}, a block holds {@link #BLOCK_ROWS} consecutive ids. The
+ * trigrams of the block being filled are collected, its filter is built once the block is complete, sized to the
+ * distinct trigrams it holds: a block of blank or short rows costs a few bytes, a block of 64 rows of varied text a
+ * few KB. The trigrams are case folded as {@link java.util.regex.Pattern} folds them in case insensitive unicode
+ * searches, so the filters serve case sensitive and insensitive searches. Used under the model monitor.
+ */
+class TrigramIndex {
+
+    static final int BLOCK_ROWS = 64;
+
+    // about 3% of false positives with 2 bits per trigram
+    private static final int MIN_BITS_PER_TRIGRAM = 10;
+    private static final int MAX_BLOOM_BITS = 1 << 15;
+    // rough heap cost of a filter besides its bits: array header + map entry
+    private static final int BLOCK_OVERHEAD_BYTES = 16 + 32;
+    private static final long[] EMPTY = new long[0];
+
+    private final TLongObjectHashMap<long[]> blocks = new TLongObjectHashMap<>();
+    // the trigrams of the block being filled
+    private final TLongHashSet openTrigrams = new TLongHashSet();
+    private long openBlock = -1;
+    private long bytes = 0;
+
+    static long block(long rowId) { return rowId / BLOCK_ROWS; }
+
+    /** approximate heap used by the filters */
+    long bytes() { return bytes + 8L * openTrigrams.size(); }
+
+    /** indexes a row, the rows are added in the order of their ids */
+    void add(long rowId, int[] codePoints, int offset, int len) {
+        final long block = block(rowId);
+        if (block != openBlock) {
+            seal();
+            openBlock = block;
+        }
+        for (int ii = offset; ii + 2 < offset + len; ++ii) {
+            openTrigrams.add(hash(codePoints[ii], codePoints[ii + 1], codePoints[ii + 2]));
+        }
+        if (rowId % BLOCK_ROWS == BLOCK_ROWS - 1) {
+            seal();
+        }
+    }
+
+    /** the row was evicted from the history */
+    void evict(long rowId) {
+        if (rowId % BLOCK_ROWS == BLOCK_ROWS - 1) {
+            final long[] bits = blocks.remove(block(rowId));
+            if (bits != null) {
+                bytes -= blockBytes(bits);
+            }
+        }
+    }
+
+    void clear() {
+        blocks.clear();
+        openTrigrams.clear();
+        openBlock = -1;
+        bytes = 0;
+    }
+
+    /**
+     * @param trigrams hashes from {@link #trigrams(String)}
+     * @return false if no row of the block can contain all the trigrams
+     */
+    boolean mayContain(long block, long[] trigrams) {
+        final long[] bits = blocks.get(block);
+        if (bits == null) {
+            return true; // not indexed, must be read
+        }
+        if (bits.length == 0) {
+            return trigrams.length == 0;
+        }
+        final int mask = bits.length * 64 - 1;
+        for (long hash : trigrams) {
+            if (!isSet(bits, bit1(hash) & mask) || !isSet(bits, bit2(hash) & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** the trigram hashes of a literal text, empty if it is shorter than 3 code points */
+    static long[] trigrams(String text) {
+        final int[] codePoints = text.codePoints().toArray();
+        final long[] hashes = new long[Math.max(0, codePoints.length - 2)];
+        for (int ii = 0; ii < hashes.length; ++ii) {
+            hashes[ii] = hash(codePoints[ii], codePoints[ii + 1], codePoints[ii + 2]);
+        }
+        return hashes;
+    }
+
+    /** builds the filter of the open block */
+    private void seal() {
+        if (openBlock < 0) {
+            return;
+        }
+        final int trigramCount = openTrigrams.size();
+        final long[] bits;
+        if (trigramCount == 0) {
+            bits = EMPTY;
+        } else {
+            final int wanted = Math.min(MAX_BLOOM_BITS, trigramCount * MIN_BITS_PER_TRIGRAM);
+            bits = new long[Math.max(64, Integer.highestOneBit(wanted - 1) << 1) / 64];
+            final int mask = bits.length * 64 - 1;
+            openTrigrams.forEach(hash -> {
+                set(bits, bit1(hash) & mask);
+                set(bits, bit2(hash) & mask);
+                return true;
+            });
+        }
+        blocks.put(openBlock, bits);
+        bytes += blockBytes(bits);
+        openTrigrams.clear();
+        openBlock = -1;
+    }
+
+    private static long blockBytes(long[] bits) { return BLOCK_OVERHEAD_BYTES + 8L * bits.length; }
+
+    private static long hash(int c0, int c1, int c2) {
+        final long key = ((long) fold(c0) << 42) ^ ((long) fold(c1) << 21) ^ fold(c2);
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    /** the case folding of Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE, e.g. U+017F long s and s fold alike */
+    private static int fold(int codePoint) {
+        return Character.toLowerCase(Character.toUpperCase(codePoint));
+    }
+
+    private static int bit1(long hash) { return (int) (hash >>> 40); }
+
+    private static int bit2(long hash) { return (int) (hash >>> 16); }
+
+    private static void set(long[] bits, int bit) { bits[bit >>> 6] |= 1L << bit; }
+
+    private static boolean isSet(long[] bits, int bit) { return (bits[bit >>> 6] & (1L << bit)) != 0; }
+}
@@ -1,9 +1,17 @@
 package rpulp.mouclade;
 
 import javafx.application.Application;
-import javafx.concurrent.Task;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.collections.ListChangeListener;
+import javafx.event.EventHandler;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
 import javafx.scene.image.Image;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
@@ -13,53 +21,170 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
+/**
+ * The sessions in the tabs of a window. Ctrl+Shift+T (Cmd+Shift+T on macOS) opens a tab, Ctrl+Shift+W closes it and
+ * Ctrl+Shift+PageUp/PageDown select the previous and next one. Closing a tab ends its session, and the tab of a session
+ * whose process ended closes. The window closes with its last tab.
+ */
 public class UiMain extends Application{
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UiMain.class);
 
+    private static final String TITLE = "Mouclade";
+
+    /** a session in its tab */
+    private static class Terminal {
+        final Session session;
+        final View view;
+        final FindBar findBar;
+        final KeyboardInput keyboardInput;
+
+        Terminal(Session session, View view, FindBar findBar, KeyboardInput keyboardInput) {
+            this.session = session;
+            this.view = view;
+            this.findBar = findBar;
+            this.keyboardInput = keyboardInput;
+        }
+    }
+
+    private final TabPane tabPane = new TabPane();
+    private SessionManager sessionManager;
+
     @Override
     public void start(Stage stage) throws Exception {
         loadIcon(stage);
-        TerminalModel terminalModel = new TerminalModel();
-        InputParser inputParser = new InputParser(terminalModel);
-        TerminalView terminalView = new TerminalView(terminalModel);
+        sessionManager = new SessionManager(Config.PUMP_THREADS, session -> Platform.runLater(() -> ended(session)));
+        tabPane.getTabs().addListener((ListChangeListener<Tab>) change -> {
+            while (change.next()) {
+                for (Tab tab : change.getRemoved()) {
+                    closed(tab);
+                }
+            }
+        });
+        tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldValue, newValue) -> {
+            if (newValue != null) {
+                terminal(newValue).view.node().requestFocus();
+            }
+        });
+        Scene scene = new Scene(tabPane);
+
+        // filters rather than handlers, the tab pane would take the arrows and Ctrl+Tab on their way up
+        scene.addEventFilter(KeyEvent.KEY_TYPED, evt -> dispatch(evt, KeyboardInput::keyTypedHandler));
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, evt -> dispatch(evt, KeyboardInput::keyPressedHandler));
+        scene.addEventFilter(KeyEvent.KEY_RELEASED, evt -> dispatch(evt, KeyboardInput::keyReleasedHandler));
+
+        openTab();
+        stage.setTitle(TITLE);
+        stage.setScene(scene);
+        stage.show();
+    }
+
+    @Override
+    public void stop() {
+        sessionManager.close();
+    }
+
+    private void openTab() throws IOException {
+        Session session = sessionManager.open(Config.NATIVE_COMMAND);
+        TerminalModel terminalModel = session.model();
+        View view = createView(terminalModel);
 
         VBox vbox = new VBox();
-        vbox.getChildren().addAll(terminalView.node());
-        StackPane root = new StackPane();
-        root.getChildren().add(vbox);
-        Scene scene = new Scene(root);
-
-        Proc proc = Proc.start(
-                Config.NATIVE_COMMAND,
-                (bytes, len) -> inputParser.parse(bytes, 0, len),
-                (bytes, len) -> inputParser.parse(bytes, 0, len)
-        );
-        KeyboardInput keyboardInput = new KeyboardInput(proc.output());
-        scene.setOnKeyTyped(keyboardInput.keyTypedHandler());
-
-        Task waitForProcTask = new Task<Void>() {
+        vbox.getChildren().addAll(view.node());
+        // over the bottom rows of the terminal while open
+        FindBar findBar = new FindBar(terminalModel, view.node());
+        StackPane.setAlignment(findBar.node(), Pos.BOTTOM_CENTER);
+        StackPane content = new StackPane();
+        content.getChildren().addAll(vbox, findBar.node());
+        // the window may shrink below the terminal until it fits again
+        content.setMinSize(0, 0);
+
+        // the model resize reflows the screen and forwards the new size to the pty
+        ChangeListener<Number> sizeListener = (obs, oldValue, newValue) -> view.fit(content.getWidth(), content.getHeight());
+        content.widthProperty().addListener(sizeListener);
+        content.heightProperty().addListener(sizeListener);
+
+        final String name = "shell " + session.id();
+        Tab tab = new Tab(name, content);
+        KeyboardInput keyboardInput = new KeyboardInput(session.writer(), terminalModel, pasteProgress(tab, name));
+        keyboardInput.addShortcut(KeyCode.F, findBar::open);
+        keyboardInput.addShortcut(KeyCode.T, this::newTab);
+        keyboardInput.addShortcut(KeyCode.W, () -> tabPane.getTabs().remove(tab));
+        keyboardInput.addShortcut(KeyCode.PAGE_UP, () -> tabPane.getSelectionModel().selectPrevious());
+        keyboardInput.addShortcut(KeyCode.PAGE_DOWN, () -> tabPane.getSelectionModel().selectNext());
+        tab.setUserData(new Terminal(session, view, findBar, keyboardInput));
+
+        tabPane.getTabs().add(tab);
+        tabPane.getSelectionModel().select(tab);
+    }
+
+    private void newTab() {
+        try {
+            openTab();
+        } catch (IOException ex) {
+            LOGGER.error("new session failed " + ex, ex);
+        }
+    }
+
+    private static Terminal terminal(Tab tab) { return (Terminal) tab.getUserData(); }
+
+    /** sends the key to the terminal of the selected tab, unless it is for its find bar */
+    private void dispatch(KeyEvent evt, Function<KeyboardInput, EventHandler<KeyEvent>> handler) {
+        Tab tab = tabPane.getSelectionModel().getSelectedItem();
+        if (tab != null && !terminal(tab).findBar.hasFocus()) {
+            handler.apply(terminal(tab).keyboardInput).handle(evt);
+        }
+    }
+
+    /** the process of the session ended, its tab closes */
+    private void ended(Session session) {
+        LOGGER.info(session + " done");
+        tabPane.getTabs().removeIf(tab -> terminal(tab).session == session);
+    }
+
+    /** the tab was closed, by the user or since its process ended, its session is closed off the FX thread */
+    private void closed(Tab tab) {
+        Terminal terminal = terminal(tab);
+        terminal.findBar.close();
+        CompletableFuture.runAsync(() -> sessionManager.close(terminal.session));
+        if (tabPane.getTabs().isEmpty()) {
+            Platform.exit();
+        }
+    }
+
+    /** shows the progress of the long pastes in the tab name */
+    private static Paste.Listener pasteProgress(Tab tab, String name) {
+        return new Paste.Listener() {
+            private int shownPercent = -1;
+
             @Override
-            protected Void call() throws Exception {
-                try {
-                    LOGGER.info("proc waitfor ...");
-                    proc.join();
-                } catch (Exception ex) {
-                    LOGGER.error("proc died: " + ex, ex);
-                } finally {
-                    LOGGER.info("proc done");
+            public void onProgress(Paste paste, long sentChars, long totalChars) {
+                final int percent = (int) (100 * sentChars / totalChars);
+                if (percent != shownPercent && sentChars < totalChars) {
+                    shownPercent = percent;
+                    Platform.runLater(() -> tab.setText(name + " - pasting " + percent + "%, Esc cancels"));
+                }
+            }
+
+            @Override
+            public void onDone(Paste paste, boolean cancelled) {
+                if (shownPercent >= 0) {
+                    shownPercent = -1;
+                    Platform.runLater(() -> tab.setText(name));
                 }
-                return null;
             }
         };
-        Thread waitForProcThread = new Thread(waitForProcTask);
-        waitForProcThread.setDaemon(true);
-        waitForProcThread.start();
+    }
 
-        stage.setTitle("Mouclade");
-        stage.setScene(scene);
-        stage.show();
+    private static View createView(TerminalModel terminalModel) {
+        switch (Config.RENDERER) {
+            case "nodes": return new TerminalView(terminalModel);
+            case "canvas": return new CanvasTerminalView(terminalModel);
+            default: throw new IllegalArgumentException("unknown renderer " + Config.RENDERER);
+        }
     }
 
     private void loadIcon(Stage stage) {
@@ -0,0 +1,16 @@
+package rpulp.mouclade;
+
+import javafx.scene.Node;
+
+/**
+ * A renderer of the terminal model, see {@link Config#RENDERER}.
+ */
+interface View {
+
+    Node node();
+
+    /**
+     * resizes the model to the cells fitting in the given pixel size, called on the FX thread
+     */
+    void fit(double width, double height);
+}
@@ -14,6 +14,7 @@ extern "C" {
 #include <string>
 #include <memory>
 #include <vector>
+#include <functional>
 #include <boost/program_options.hpp>
 #include <boost/filesystem.hpp>
 
@@ -115,6 +116,13 @@ public:
         return wcnt;
     }
 
+    char* data() { return bytes_; }
+
+    Buffer& limit(int limit) {
+        limit_ = limit;
+        return *this;
+    }
+
     char operator[](std::size_t idx) const {
         if (idx > capacity_) {
             throw std::runtime_error("buffer out of bounds, idx: " + std::to_string(idx) + " capacity: " + std::to_string(capacity_));
@@ -253,6 +261,66 @@ void set_window_size(int fd, int rows, int cols) {
 }
 
 
+/*
+ * stdin carries the bytes for the pty, 0xff (never part of UTF-8) escapes the commands from the java side:
+ *   0xff 0xff                                  a literal 0xff
+ *   0xff 'W' rows_hi rows_lo cols_hi cols_lo   resize the window
+ * The decoder is a state machine, a command can be split across reads.
+ */
+class InputDecoder {
+public:
+    static const unsigned char ESCAPE = 0xff;
+    static const unsigned char RESIZE = 'W';
+
+    InputDecoder(function<void (int, int)> on_resize): on_resize_(on_resize), state_(DATA), arg_count_(0) {}
+
+    // decodes in place the bytes from position to limit, the limit is moved to the end of the decoded data
+    void decode(Buffer& buffer) {
+        char* bytes = buffer.data();
+        int out = buffer.position();
+        for (int in = buffer.position(); in < buffer.limit(); ++in) {
+            const unsigned char byt = bytes[in];
+            switch (state_) {
+                case DATA:
+                    if (byt == ESCAPE) {
+                        state_ = ESCAPED;
+                    } else {
+                        bytes[out++] = byt;
+                    }
+                    break;
+                case ESCAPED:
+                    if (byt == RESIZE) {
+                        arg_count_ = 0;
+                        state_ = RESIZE_ARGS;
+                    } else {
+                        bytes[out++] = byt; // 0xff 0xff, or an unknown command passed through
+                        state_ = DATA;
+                    }
+                    break;
+                case RESIZE_ARGS:
+                    args_[arg_count_++] = byt;
+                    if (arg_count_ == 4) {
+                        on_resize_((args_[0] << 8) | args_[1], (args_[2] << 8) | args_[3]);
+                        state_ = DATA;
+                    }
+                    break;
+            }
+        }
+        buffer.limit(out);
+    }
+
+private:
+    InputDecoder(const InputDecoder& that) = delete;
+    InputDecoder& operator=(const InputDecoder& that) = delete;
+
+    enum State { DATA, ESCAPED, RESIZE_ARGS };
+
+    function<void (int, int)> on_resize_;
+    State state_;
+    unsigned char args_[4];
+    int arg_count_;
+};
+
 class WindowSize {
 public:
     WindowSize(int rows, int cols): rows_(rows), cols_(cols) {}
@@ -426,8 +494,39 @@ void test_Buffer_read() {
     cout << "running test_Buffer_read DONE" << endl;
 }
 
+void test_InputDecoder() {
+    cout << "running test_InputDecoder ..." << endl;
+    int rows = -1;
+    int cols = -1;
+    InputDecoder decoder([&rows, &cols] (int r, int c) { rows = r; cols = c; });
+
+    Buffer buffer(16);
+    const char chunk1[] = { 'a', (char) 0xff, (char) 0xff, 'b', (char) 0xff, 'W', 0, 40 };
+    memcpy(buffer.data(), chunk1, sizeof(chunk1));
+    buffer.limit(sizeof(chunk1));
+    decoder.decode(buffer);
+    assertEquals(3, buffer.limit(), "bad limit after chunk1");
+    assertEquals('a', buffer[0], "bad [0]");
+    assertEquals((char) 0xff, buffer[1], "bad [1]");
+    assertEquals('b', buffer[2], "bad [2]");
+    assertEquals(-1, rows, "resize applied too early");
+
+    buffer.clear();
+    const char chunk2[] = { 1, 44, 'c' };
+    memcpy(buffer.data(), chunk2, sizeof(chunk2));
+    buffer.limit(sizeof(chunk2));
+    decoder.decode(buffer);
+    assertEquals(1, buffer.limit(), "bad limit after chunk2");
+    assertEquals('c', buffer[0], "bad [0]");
+    assertEquals(40, rows, "bad rows");
+    assertEquals(300, cols, "bad cols");
+
+    cout << "running test_InputDecoder DONE" << endl;
+}
+
 int run_uts() {
     test_Buffer_read();
+    test_InputDecoder();
     return 0;
 }
 
@@ -466,9 +565,17 @@ int mouclade_run(Args& args)
     if (args.log_ios()) {
         log.open(fs::path(args.log_ios_path_));
     }
+
+    InputDecoder in_decoder([master_fd] (int rows, int cols) { set_window_size(master_fd, rows, cols); });
     
-    in.on_read([&in, &slave, &in_2_slave, &args, &log] () {
+    in.on_read([&in, &slave, &in_2_slave, &in_decoder, &args, &log] () {
         in_2_slave.flip();
+        in_decoder.decode(in_2_slave);
+        if (in_2_slave.remaining() == 0) {
+            // only commands, keep reading
+            in_2_slave.clear();
+            return;
+        }
         log_ios(args, in_2_slave, log, "TO:");
         in.unset_read();
         slave.set_write();
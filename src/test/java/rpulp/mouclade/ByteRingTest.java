@@ -0,0 +1,63 @@
+package rpulp.mouclade;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ByteRingTest {
+
+    @Test
+    public void offerAndPollWrapAround() {
+        ByteRing ring = new ByteRing(5);
+        Assert.assertEquals(8, ring.capacity());
+        Assert.assertEquals(6, ring.offer(new byte[] {1, 2, 3, 4, 5, 6}, 0, 6));
+        byte[] out = new byte[4];
+        Assert.assertEquals(4, ring.poll(out, 0, 4));
+        Assert.assertArrayEquals(new byte[] {1, 2, 3, 4}, out);
+        Assert.assertEquals(6, ring.offer(new byte[] {7, 8, 9, 10, 11, 12, 13}, 0, 7));
+        Assert.assertEquals(0, ring.offer(new byte[] {14}, 0, 1));
+        byte[] all = new byte[10];
+        Assert.assertEquals(8, ring.poll(all, 1, 9));
+        Assert.assertArrayEquals(new byte[] {0, 5, 6, 7, 8, 9, 10, 11, 12, 0}, all);
+        Assert.assertTrue(ring.isEmpty());
+        Assert.assertEquals(0, ring.poll(all, 0, 10));
+    }
+
+    @Test
+    public void producerAndConsumerThreads() throws Exception {
+        final int total = 8 * 1024 * 1024;
+        final ByteRing ring = new ByteRing(1024);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            byte[] chunk = new byte[700];
+            int sent = 0;
+            while (sent < total) {
+                int len = Math.min(chunk.length, total - sent);
+                for (int ii = 0; ii < len; ++ii) {
+                    chunk[ii] = (byte) (sent + ii);
+                }
+                int off = 0;
+                while (off < len) {
+                    off += ring.offer(chunk, off, len - off);
+                }
+                sent += len;
+            }
+        });
+        producer.start();
+        byte[] chunk = new byte[333];
+        int received = 0;
+        while (received < total) {
+            int len = ring.poll(chunk, 0, chunk.length);
+            for (int ii = 0; ii < len; ++ii) {
+                if (chunk[ii] != (byte) (received + ii)) {
+                    failure.set(new AssertionError("bad byte at " + (received + ii)));
+                }
+            }
+            received += len;
+        }
+        producer.join();
+        Assert.assertNull(failure.get());
+        Assert.assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,37 @@
+package rpulp.mouclade;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GlyphSlotsTest {
+
+    @Test
+    public void aFullAtlasIsOnlyResetByTheNextFrame() {
+        GlyphSlots slots = new GlyphSlots();
+        slots.reset(3);
+        Assert.assertFalse(slots.beginFrame());
+        for (int rgb = 0; rgb < 3; ++rgb) {
+            Assert.assertEquals(rgb, slots.add(GlyphSlots.key('a', rgb, 0)));
+        }
+
+        // the glyphs drawn earlier in the frame keep their slots, the new ones get none
+        Assert.assertEquals(GlyphSlots.NO_SLOT, slots.add(GlyphSlots.key('a', 3, 0)));
+        Assert.assertEquals(GlyphSlots.NO_SLOT, slots.add(GlyphSlots.key('b', 0, 1)));
+        Assert.assertEquals(0, slots.get(GlyphSlots.key('a', 0, 0)));
+        Assert.assertEquals(2, slots.get(GlyphSlots.key('a', 2, 0)));
+
+        Assert.assertTrue(slots.beginFrame());
+        Assert.assertEquals(0, slots.count());
+        Assert.assertEquals(GlyphSlots.NO_SLOT, slots.get(GlyphSlots.key('a', 0, 0)));
+        Assert.assertEquals(0, slots.add(GlyphSlots.key('a', 3, 0)));
+        Assert.assertFalse(slots.beginFrame());
+        Assert.assertEquals(0, slots.get(GlyphSlots.key('a', 3, 0)));
+    }
+
+    @Test
+    public void keysTellTheStylesApart() {
+        Assert.assertNotEquals(GlyphSlots.key('a', 0xffffff, 0), GlyphSlots.key('a', 0xffffff, 1));
+        Assert.assertNotEquals(GlyphSlots.key('a', 0x000001, 0), GlyphSlots.key('a', 0x000002, 0));
+        Assert.assertNotEquals(GlyphSlots.key(0x1f600, 0, 3), GlyphSlots.key(0x1f601, 0, 3));
+    }
+}
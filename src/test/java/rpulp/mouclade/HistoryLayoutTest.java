@@ -0,0 +1,74 @@
+package rpulp.mouclade;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistoryLayoutTest {
+
+    private static void push(Scrollback scrollback, String text, boolean wrapped) {
+        int[] codePoints = text.codePoints().toArray();
+        scrollback.push(codePoints, new int[codePoints.length], 0, codePoints.length, wrapped);
+    }
+
+    private static String row(HistoryLayout layout, int k, int width) {
+        int[] codePoints = new int[width];
+        if (!layout.readRow(k, codePoints, new int[width], 0)) {
+            return null;
+        }
+        return new String(codePoints, 0, width);
+    }
+
+    @Test
+    public void pushesOnlyLayOutTheNewLines() {
+        Scrollback scrollback = new Scrollback(1000, 0);
+        HistoryLayout layout = new HistoryLayout(scrollback);
+        layout.setWidth(2);
+        for (int ii = 0; ii < 100; ++ii) {
+            push(scrollback, "r" + ii % 10, false);
+        }
+        Assert.assertEquals("r0", row(layout, 99, 2));
+        Assert.assertNull(row(layout, 100, 2));
+        Assert.assertEquals(100, layout.laidOutLines());
+        push(scrollback, "x", false);
+        push(scrollback, "y", false);
+        Assert.assertEquals("r0", row(layout, 101, 2));
+        Assert.assertEquals("y ", row(layout, 0, 2));
+        Assert.assertEquals(102, layout.laidOutLines());
+    }
+
+    @Test
+    public void aLineContinuedByAPushIsLaidOutAgain() {
+        Scrollback scrollback = new Scrollback(1000, 0);
+        HistoryLayout layout = new HistoryLayout(scrollback);
+        layout.setWidth(3);
+        push(scrollback, "ab", false);
+        push(scrollback, "cd", true);
+        Assert.assertEquals("cd ", row(layout, 0, 3));
+        push(scrollback, "ef", false);
+        Assert.assertEquals("f  ", row(layout, 0, 3));
+        Assert.assertEquals("cde", row(layout, 1, 3));
+        Assert.assertEquals("ab ", row(layout, 2, 3));
+        Assert.assertNull(row(layout, 3, 3));
+    }
+
+    @Test
+    public void evictedLinesAreDropped() {
+        Scrollback scrollback = new Scrollback(4, 0);
+        HistoryLayout layout = new HistoryLayout(scrollback);
+        layout.setWidth(2);
+        push(scrollback, "aa", true);
+        push(scrollback, "bb", false);
+        push(scrollback, "cc", false);
+        Assert.assertEquals("aa", row(layout, 2, 2));
+        push(scrollback, "dd", false);
+        push(scrollback, "ee", false);
+        // the first row of the line was evicted, its rest is laid out again as a line of its own
+        Assert.assertEquals("ee", row(layout, 0, 2));
+        Assert.assertEquals("bb", row(layout, 3, 2));
+        Assert.assertNull(row(layout, 4, 2));
+        scrollback.clear();
+        Assert.assertNull(row(layout, 0, 2));
+        push(scrollback, "ff", false);
+        Assert.assertEquals("ff", row(layout, 0, 2));
+    }
+}
@@ -27,6 +27,46 @@ public class InputParserTest {
         Assert.assertEquals(expectedActions, listener.actions);
     }
 
+    @Test
+    public void parseSgrParameters() {
+        MockInputParserListener listener = new MockInputParserListener();
+        new InputParser(listener).parse("\u001B[m\u001B[1;;38;2;10;20;30m".getBytes(Charsets.ISO_8859_1));
+        ArrayList<Action> expectedActions = Lists.newArrayList(
+                new SelectGfxRendition(0),
+                new SelectGfxRendition(1, 0, 38, 2, 10, 20, 30)
+        );
+        Assert.assertEquals(expectedActions, listener.actions);
+    }
+
+    @Test
+    public void parseScrollRegionSequences() {
+        MockInputParserListener listener = new MockInputParserListener();
+        new InputParser(listener).parse("\u001B[2;5r\u001B[r\u001B[3L\u001B[M\u001BM\u001B[?1r".getBytes(Charsets.ISO_8859_1));
+        ArrayList<Action> expectedActions = Lists.newArrayList(
+                new SetScrollRegion(2, 5),
+                new SetScrollRegion(1, 0),
+                new InsertLines(3),
+                new DeleteLines(1),
+                new ReverseIndex()
+        );
+        Assert.assertEquals(expectedActions, listener.actions);
+    }
+
+    @Test
+    public void parsePrivateModes() {
+        MockInputParserListener listener = new MockInputParserListener();
+        new InputParser(listener).parse("\u001B[?25l\u001B[?1049;2004h\u001B[4h\u001B[>c\u001B[?25h\u001B=\u001B>".getBytes(Charsets.ISO_8859_1));
+        ArrayList<Action> expectedActions = Lists.newArrayList(
+                new HideCursor(),
+                new SetPrivateMode(1049, true),
+                new SetPrivateMode(2004, true),
+                new ShowCursor(),
+                new SetKeypadMode(true),
+                new SetKeypadMode(false)
+        );
+        Assert.assertEquals(expectedActions, listener.actions);
+    }
+
     @Test
     public void parse2() {
         MockInputParserListener listener = new MockInputParserListener();
@@ -38,4 +78,61 @@ public class InputParserTest {
         );
         Assert.assertEquals(expectedActions, listener.actions);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void parseSplitSequences() {
+        MockInputParserListener listener = new MockInputParserListener();
+        InputParser parser = new InputParser(listener);
+        for (byte byt : "ab\u001B[12;34Hc\u001B]2;ti".getBytes(Charsets.ISO_8859_1)) {
+            parser.parse(new byte[] {byt});
+        }
+        parser.parse("tle\u001B\\d".getBytes(Charsets.ISO_8859_1));
+        ArrayList<Action> expectedActions = Lists.newArrayList(
+                new AddChars("ab"),
+                new CursorPosition(12, 34),
+                new AddChars("c"),
+                new HandleOscAction(2, "title"),
+                new AddChars("d")
+        );
+        Assert.assertEquals(expectedActions, listener.actions);
+    }
+
+    @Test
+    public void parseUtf8() {
+        byte[] bytes = "h\u00e9\u20ac\uD83D\uDE00\u001B[Ax".getBytes(Charsets.UTF_8);
+        MockInputParserListener listener = new MockInputParserListener();
+        InputParser parser = new InputParser(listener);
+        for (byte byt : bytes) {
+            parser.parse(new byte[] {byt});
+        }
+        ArrayList<Action> expectedActions = Lists.newArrayList(
+                new AddChars("h\u00e9\u20ac\uD83D\uDE00"),
+                new CursorUp(1),
+                new AddChars("x")
+        );
+        Assert.assertEquals(expectedActions, listener.actions);
+    }
+
+    @Test
+    public void parseInvalidUtf8() {
+        byte[] bytes = {'a', (byte) 0xc3, 'b', (byte) 0x80, (byte) 0xc0, (byte) 0xaf, (byte) 0xe2, (byte) 0x82, 0x1b, '[', 'B'};
+        MockInputParserListener listener = new MockInputParserListener();
+        new InputParser(listener).parse(bytes);
+        ArrayList<Action> expectedActions = Lists.newArrayList(
+                new AddChars("a\ufffdb\ufffd\ufffd\ufffd"),
+                new CursorDown(1)
+        );
+        Assert.assertEquals(expectedActions, listener.actions);
+    }
+
+    @Test
+    public void parseDefaultsAndIgnoredSequences() {
+        MockInputParserListener listener = new MockInputParserListener();
+        new InputParser(listener).parse("\u001B[;5H\u001BPq#0;1\u001B\\\u001B(Bx\u001B[2\u0018y\u001B[4:3mz".getBytes(Charsets.ISO_8859_1));
+        ArrayList<Action> expectedActions = Lists.newArrayList(
+                new CursorPosition(1, 5),
+                new AddChars("x\u0018yz")
+        );
+        Assert.assertEquals(expectedActions, listener.actions);
+    }
+}
@@ -0,0 +1,87 @@
+package rpulp.mouclade;
+
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InputPumpTest {
+
+    /** runs the tasks one at a time, on demand */
+    private static class QueueExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override public void execute(Runnable task) { tasks.add(task); }
+
+        void runOne() { tasks.poll().run(); }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                runOne();
+            }
+        }
+    }
+
+    private static TerminalModel model() {
+        TerminalModel model = new TerminalModel(new Scrollback(100, 0));
+        model.resize(10, 2);
+        return model;
+    }
+
+    private static String row(TerminalModel model, int yy) {
+        synchronized (model) {
+            return new String(model.codePoints(), model.rowStart(yy), model.width());
+        }
+    }
+
+    @Test
+    public void floodingSessionTakesTurns() {
+        QueueExecutor executor = new QueueExecutor();
+        TerminalModel flooding = model();
+        TerminalModel quiet = model();
+        InputPump floodingPump = new InputPump(new InputParser(flooding), flooding, executor, () -> {});
+        InputPump quietPump = new InputPump(new InputParser(quiet), quiet, executor, () -> {});
+
+        byte[] flood = new byte[200 * 1024];
+        Arrays.fill(flood, (byte) 'x');
+        floodingPump.newStream().onInput(flood, flood.length);
+        quietPump.newStream().onInput("hello".getBytes(Charsets.UTF_8), 5);
+        Assert.assertEquals(2, executor.tasks.size());
+
+        // the flooding pump parses one chunk and queues itself behind the quiet one
+        executor.runOne();
+        Assert.assertEquals(2, executor.tasks.size());
+        executor.runOne();
+        Assert.assertEquals("hello     ", row(quiet, 0));
+        Assert.assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+        Assert.assertEquals("xxxxxxxxxx", row(flooding, 0));
+        floodingPump.close();
+        quietPump.close();
+    }
+
+    @Test
+    public void endsOnceTheBytesAreParsed() {
+        QueueExecutor executor = new QueueExecutor();
+        TerminalModel model = model();
+        AtomicInteger ends = new AtomicInteger();
+        InputPump pump = new InputPump(new InputParser(model), model, executor, ends::incrementAndGet);
+        InputPump.Stream stream = pump.newStream();
+        stream.onInput("bye".getBytes(Charsets.UTF_8), 3);
+        stream.onEnd();
+        Assert.assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+        Assert.assertEquals("bye       ", row(model, 0));
+        Assert.assertEquals(1, ends.get());
+
+        // ended pumps queue nothing
+        stream.onInput("more".getBytes(Charsets.UTF_8), 4);
+        Assert.assertTrue(executor.tasks.isEmpty());
+    }
+}
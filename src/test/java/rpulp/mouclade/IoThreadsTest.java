@@ -0,0 +1,48 @@
+package rpulp.mouclade;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadFactory;
+
+public class IoThreadsTest {
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    private static boolean runs(ThreadFactory factory) throws Exception {
+        final boolean[] ran = {false};
+        Thread thread = factory.newThread(() -> ran[0] = true);
+        thread.start();
+        thread.join();
+        return ran[0];
+    }
+
+    @Test
+    public void platformThreadsAreDaemons() throws Exception {
+        ThreadFactory factory = IoThreads.factory("platform");
+        Thread thread = factory.newThread(() -> {});
+        Assert.assertTrue(thread.isDaemon());
+        Assert.assertFalse(isVirtual(thread));
+        Assert.assertTrue(runs(factory));
+    }
+
+    @Test
+    public void virtualThreadsWhenTheJdkHasThem() throws Exception {
+        ThreadFactory factory = IoThreads.factory("virtual");
+        boolean hasVirtualThreads;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            hasVirtualThreads = true;
+        } catch (NoSuchMethodException ex) {
+            hasVirtualThreads = false;
+        }
+        Assert.assertEquals(hasVirtualThreads, isVirtual(factory.newThread(() -> {})));
+        Assert.assertTrue(runs(factory));
+    }
+}
@@ -0,0 +1,85 @@
+package rpulp.mouclade;
+
+import com.google.common.base.Charsets;
+import javafx.scene.input.KeyCode;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeyEncoderTest {
+
+    private final KeyEncoder encoder = new KeyEncoder();
+
+    private String pressed(KeyCode code, int modifiers, boolean applicationCursor, boolean applicationKeypad) {
+        byte[] bytes = encoder.pressed(code, modifiers, applicationCursor, applicationKeypad);
+        return bytes == null ? null : new String(bytes, Charsets.UTF_8);
+    }
+
+    private String pressed(KeyCode code, int modifiers) { return pressed(code, modifiers, false, false); }
+
+    private String typed(String character, int modifiers) {
+        byte[] bytes = encoder.typed(character, modifiers);
+        return bytes == null ? null : new String(bytes, Charsets.UTF_8);
+    }
+
+    @Test
+    public void cursorKeys() {
+        Assert.assertEquals("\u001b[A", pressed(KeyCode.UP, 0));
+        Assert.assertEquals("\u001bOA", pressed(KeyCode.UP, 0, true, false));
+        Assert.assertEquals("\u001b[1;5D", pressed(KeyCode.LEFT, KeyEncoder.CTRL));
+        // modified keys ignore the application mode
+        Assert.assertEquals("\u001b[1;4C", pressed(KeyCode.RIGHT, KeyEncoder.SHIFT | KeyEncoder.ALT, true, false));
+        Assert.assertEquals("\u001bOH", pressed(KeyCode.HOME, 0, true, false));
+        Assert.assertEquals("\u001b[F", pressed(KeyCode.END, 0));
+    }
+
+    @Test
+    public void editingAndFunctionKeys() {
+        Assert.assertEquals("\u001b[3~", pressed(KeyCode.DELETE, 0));
+        Assert.assertEquals("\u001b[5;2~", pressed(KeyCode.PAGE_UP, KeyEncoder.SHIFT));
+        Assert.assertEquals("\u001bOP", pressed(KeyCode.F1, 0));
+        Assert.assertEquals("\u001b[1;5S", pressed(KeyCode.F4, KeyEncoder.CTRL));
+        Assert.assertEquals("\u001b[15~", pressed(KeyCode.F5, 0));
+        Assert.assertEquals("\u001b[24;3~", pressed(KeyCode.F12, KeyEncoder.ALT));
+    }
+
+    @Test
+    public void controlKeys() {
+        Assert.assertEquals("\r", pressed(KeyCode.ENTER, 0));
+        Assert.assertEquals("\u001b\r", pressed(KeyCode.ENTER, KeyEncoder.ALT));
+        Assert.assertEquals("\u007f", pressed(KeyCode.BACK_SPACE, 0));
+        Assert.assertEquals("\b", pressed(KeyCode.BACK_SPACE, KeyEncoder.CTRL));
+        Assert.assertEquals("\u001b\u007f", pressed(KeyCode.BACK_SPACE, KeyEncoder.ALT));
+        Assert.assertEquals("\u001b[Z", pressed(KeyCode.TAB, KeyEncoder.SHIFT));
+        Assert.assertEquals("\u001b", pressed(KeyCode.ESCAPE, 0));
+    }
+
+    @Test
+    public void keypad() {
+        Assert.assertNull(pressed(KeyCode.NUMPAD5, 0));
+        Assert.assertEquals("\u001bOu", pressed(KeyCode.NUMPAD5, 0, false, true));
+        Assert.assertEquals("\u001bOk", pressed(KeyCode.ADD, 0, false, true));
+        Assert.assertNull(pressed(KeyCode.NUMPAD5, KeyEncoder.SHIFT, false, true));
+    }
+
+    @Test
+    public void typedCharacters() {
+        Assert.assertNull(pressed(KeyCode.A, 0));
+        Assert.assertEquals("a", typed("a", 0));
+        Assert.assertEquals("\u001ba", typed("a", KeyEncoder.ALT));
+        Assert.assertEquals("\u0001", typed("\u0001", KeyEncoder.CTRL));
+        Assert.assertEquals("@", typed("@", KeyEncoder.CTRL | KeyEncoder.ALT));
+        // Ctrl+_, Ctrl+@ and Ctrl+^ are typed with Shift on most layouts
+        Assert.assertEquals("\u001f", typed("\u001f", KeyEncoder.CTRL | KeyEncoder.SHIFT));
+        Assert.assertEquals("\u0000", typed("\u0000", KeyEncoder.CTRL | KeyEncoder.SHIFT));
+        Assert.assertEquals("\u001e", typed("\u001e", KeyEncoder.CTRL | KeyEncoder.SHIFT));
+        Assert.assertEquals("\u00e9", typed("\u00e9", 0));
+        Assert.assertNull(typed("", 0));
+    }
+
+    @Test
+    public void sequencesArePrecomputed() {
+        Assert.assertSame(encoder.pressed(KeyCode.UP, KeyEncoder.CTRL, false, false),
+                encoder.pressed(KeyCode.UP, KeyEncoder.CTRL, false, false));
+        Assert.assertSame(encoder.typed("x", 0), encoder.typed("x", 0));
+    }
+}
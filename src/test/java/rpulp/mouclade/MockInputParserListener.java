@@ -74,6 +74,8 @@ public class MockInputParserListener implements InputParser.Listener{
 
         void appendByte(int byt) { sb.append((char)byt); }
 
+        void appendCodePoint(int codePoint) { sb.appendCodePoint(codePoint); }
+
         @Override public boolean equals(Object that) {
             return that.getClass() == this.getClass() && (sb.toString().equals(((AddChars)that).sb.toString()));
         }
@@ -95,23 +97,68 @@ public class MockInputParserListener implements InputParser.Listener{
 
     static class CursorPreviousLine extends UnaryAction { CursorPreviousLine(int param0) { super(param0); } }
 
-    static class SelectGfxRendition extends UnaryAction { SelectGfxRendition(int param0) { super(param0); } }
+    static class SelectGfxRendition extends Action {
+        final int[] params;
+
+        SelectGfxRendition(int... params) { this.params = params; }
+
+        @Override public boolean equals(Object that) {
+            return that.getClass() == this.getClass() && Arrays.equals(params, ((SelectGfxRendition)that).params);
+        }
+
+        @Override public String toString() { return this.getClass().getSimpleName() + Arrays.toString(params); }
+    }
 
     static class EraseDisplay extends UnaryAction { EraseDisplay(int param0) { super(param0); } }
 
     static class CursorPosition extends BinaryAction { CursorPosition(int p0, int p1) { super(p0, p1); } }
 
+    static class SetScrollRegion extends BinaryAction { SetScrollRegion(int p0, int p1) { super(p0, p1); } }
+
+    static class InsertLines extends UnaryAction { InsertLines(int param0) { super(param0); } }
+
+    static class DeleteLines extends UnaryAction { DeleteLines(int param0) { super(param0); } }
+
+    static class ReverseIndex extends Action {
+        @Override public boolean equals(Object that) { return that.getClass() == this.getClass(); }
+    }
+
+    static class HideCursor extends Action {
+        @Override public boolean equals(Object that) { return that.getClass() == this.getClass(); }
+    }
+
+    static class ShowCursor extends Action {
+        @Override public boolean equals(Object that) { return that.getClass() == this.getClass(); }
+    }
+
+    static class SetPrivateMode extends BinaryAction {
+        SetPrivateMode(int mode, boolean enabled) { super(mode, enabled ? 1 : 0); }
+    }
+
+    static class SetKeypadMode extends UnaryAction {
+        SetKeypadMode(boolean application) { super(application ? 1 : 0); }
+    }
+
     final ArrayList<Action> actions = new ArrayList<>();
 
     @Override public void handleOsc(int param, byte[] text, int offset, int len) { actions.add(new HandleOscAction(param, text, offset, len)); }
 
-    @Override public void addChar(int byt) {
+    @Override public void addChar(int byt) { lastAddChars().appendByte(byt); }
+
+    @Override public void addChars(int[] codePoints, int off, int len) {
+        AddChars addChars = lastAddChars();
+        for (int ii = off; ii < off + len; ++ii) {
+            addChars.appendCodePoint(codePoints[ii]);
+        }
+    }
+
+    private AddChars lastAddChars() {
         int last = actions.size() - 1;
         if (last < 0 || !(actions.get(last) instanceof AddChars)) {
             actions.add(new AddChars());
             last = actions.size() - 1;
         }
-        ((AddChars)actions.get(last)).appendByte(byt);
+        return (AddChars)actions.get(last);
     }
 
     @Override public void cursorUp(int n) { actions.add(new CursorUp(n)); }
@@ -138,7 +185,17 @@ public class MockInputParserListener implements InputParser.Listener{
 
     @Override public void scrollDown(int n) {}
 
-    @Override public void selectGfxRendition(int n) {actions.add(new SelectGfxRendition(n)); }
+    @Override public void setScrollRegion(int top, int bottom) { actions.add(new SetScrollRegion(top, bottom)); }
+
+    @Override public void insertLines(int n) { actions.add(new InsertLines(n)); }
+
+    @Override public void deleteLines(int n) { actions.add(new DeleteLines(n)); }
+
+    @Override public void reverseIndex() { actions.add(new ReverseIndex()); }
+
+    @Override public void selectGfxRendition(int[] params, int count) {
+        actions.add(new SelectGfxRendition(Arrays.copyOf(params, count)));
+    }
 
     @Override public void auxPort(int n) {}
 
@@ -146,7 +203,11 @@ public class MockInputParserListener implements InputParser.Listener{
 
     @Override public void restoreCursorPos() {}
 
-    @Override public void hideCursor() {}
+    @Override public void hideCursor() { actions.add(new HideCursor()); }
+
+    @Override public void showCursor() { actions.add(new ShowCursor()); }
+
+    @Override public void setPrivateMode(int mode, boolean enabled) { actions.add(new SetPrivateMode(mode, enabled)); }
 
-    @Override public void showCursor() {}
+    @Override public void setKeypadMode(boolean application) { actions.add(new SetKeypadMode(application)); }
 }
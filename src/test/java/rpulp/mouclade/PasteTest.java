@@ -0,0 +1,70 @@
+package rpulp.mouclade;
+
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PasteTest {
+
+    private static class Recorder implements Paste.Listener {
+        final List<Long> progress = new ArrayList<>();
+        Boolean cancelled;
+
+        @Override public void onProgress(Paste paste, long sentChars, long totalChars) { progress.add(sentChars); }
+
+        @Override public void onDone(Paste paste, boolean cancelled) { this.cancelled = cancelled; }
+    }
+
+    /** pastes the text and returns what was written once it is as long as expected */
+    private static String paste(String text, boolean bracketed, Recorder recorder, String expected) throws Exception {
+        final int expectedSize = expected.getBytes(Charsets.UTF_8).length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PtyWriter writer = new PtyWriter(out, (rows, cols) -> {},
+                IoThreads.executor(IoThreads.factory("platform"), "PtyWriter"));
+        new Paste(text, bracketed, writer, recorder).run();
+        for (int ii = 0; ii < 500; ++ii) {
+            synchronized (out) {
+                if (out.size() >= expectedSize) {
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+        writer.close();
+        synchronized (out) {
+            return new String(out.toByteArray(), Charsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void lineBreaksAreSentAsCr() throws Exception {
+        Recorder recorder = new Recorder();
+        Assert.assertEquals("a\rb\rc\r", paste("a\nb\r\nc\r", false, recorder, "a\rb\rc\r"));
+        Assert.assertEquals("[7]", recorder.progress.toString());
+        Assert.assertEquals(Boolean.FALSE, recorder.cancelled);
+    }
+
+    @Test
+    public void bracketedPasteDropsEscapes() throws Exception {
+        String expected = "\u001b[200~ls[201~\r\u001b[201~";
+        Assert.assertEquals(expected, paste("ls\u001b[201~\n", true, new Recorder(), expected));
+    }
+
+    @Test
+    public void largeTextIsStreamedInChunks() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1024 * 1024) {
+            sb.append("line ").append(sb.length()).append(" \u00e9\ud83d\ude00\n");
+        }
+        String text = sb.toString();
+        Recorder recorder = new Recorder();
+        String expected = text.replace('\n', '\r');
+        Assert.assertEquals(expected, paste(text, false, recorder, expected));
+        Assert.assertTrue(recorder.progress.size() > 1);
+        Assert.assertEquals(Long.valueOf(text.length()), recorder.progress.get(recorder.progress.size() - 1));
+    }
+}
@@ -0,0 +1,138 @@
+package rpulp.mouclade;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PtyWriterTest {
+
+    private static final ExecutorService WRITERS = IoThreads.executor(IoThreads.factory("platform"), "PtyWriter");
+
+    /** a child that stops reading until released */
+    private static class StalledOutput extends OutputStream {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final List<Integer> writes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(int byt) throws IOException { write(new byte[] {(byte) byt}, 0, 1); }
+
+        @Override
+        public synchronized void write(byte[] bytes, int off, int len) throws IOException {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            written.write(bytes, off, len);
+            writes.add(len);
+        }
+
+        synchronized String text() { return new String(written.toByteArray()); }
+    }
+
+    private static void waitFor(StalledOutput out, int len) throws InterruptedException {
+        for (int ii = 0; ii < 500 && out.text().length() < len; ++ii) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void offerNeverWaitsAndBurstsAreBatched() throws Exception {
+        StalledOutput out = new StalledOutput();
+        List<String> resizes = new CopyOnWriteArrayList<>();
+        PtyWriter writer = new PtyWriter(out, (rows, cols) -> resizes.add(rows + "x" + cols), WRITERS);
+        Assert.assertTrue(writer.offer("a".getBytes()));
+        Assert.assertTrue(out.writing.await(5, TimeUnit.SECONDS));
+
+        // the child does not read, the keys queue up behind the stalled write
+        Assert.assertTrue(writer.offer("bc".getBytes()));
+        Assert.assertTrue(writer.offer("d".getBytes()));
+        writer.resize(24, 80);
+        writer.resize(30, 100);
+        Assert.assertFalse(writer.offer(new byte[PtyWriter.CAPACITY]));
+        Assert.assertTrue(writer.offer(new byte[PtyWriter.CAPACITY - 3], 0, 10));
+
+        out.release.countDown();
+        waitFor(out, 14);
+        Assert.assertEquals("abcd", out.text().substring(0, 4));
+        Assert.assertEquals("[1, 13]", out.writes.toString());
+        for (int ii = 0; ii < 500 && resizes.isEmpty(); ++ii) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("[30x100]", resizes.toString());
+        Assert.assertFalse(writer.isClosed());
+        writer.close();
+        Assert.assertTrue(writer.isClosed());
+        Assert.assertFalse(writer.offer("e".getBytes()));
+    }
+
+    @Test
+    public void writeWaitsForRoom() throws Exception {
+        StalledOutput out = new StalledOutput();
+        PtyWriter writer = new PtyWriter(out, (rows, cols) -> {}, WRITERS);
+        byte[] paste = new byte[3 * PtyWriter.CAPACITY];
+        for (int ii = 0; ii < paste.length; ++ii) {
+            paste[ii] = (byte) ('a' + ii % 26);
+        }
+        Thread paster = new Thread(() -> {
+            try {
+                writer.write(paste, 0, paste.length);
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        paster.start();
+        Assert.assertTrue(out.writing.await(5, TimeUnit.SECONDS));
+        paster.join(100);
+        Assert.assertTrue(paster.isAlive());
+
+        out.release.countDown();
+        paster.join(5000);
+        waitFor(out, paste.length);
+        Assert.assertEquals(new String(paste), out.text());
+        writer.close();
+    }
+
+    @Test
+    public void anIdleWriterHoldsNoThread() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AtomicInteger tasks = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        PtyWriter writer = new PtyWriter(out, (rows, cols) -> {}, task -> {
+            tasks.incrementAndGet();
+            WRITERS.execute(() -> {
+                running.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        });
+        int expected = 0;
+        for (String keys : new String[] {"ab", "c"}) {
+            Assert.assertTrue(writer.offer(keys.getBytes()));
+            expected += keys.length();
+            // the task ends once the keys are written
+            for (int ii = 0; ii < 500 && (out.size() < expected || running.get() > 0); ++ii) {
+                Thread.sleep(10);
+            }
+        }
+        Assert.assertEquals("abc", out.toString());
+        Assert.assertEquals(0, running.get());
+        Assert.assertEquals(2, tasks.get());
+        writer.close();
+    }
+}
@@ -0,0 +1,88 @@
+package rpulp.mouclade;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class ReadBufferTest {
+
+    @Test
+    public void growsWhileReadsFillIt() {
+        Proc.ReadBuffer buffer = new Proc.ReadBuffer();
+        Assert.assertEquals(Proc.ReadBuffer.MIN_SIZE, buffer.bytes().length);
+        buffer.adapt(Proc.ReadBuffer.MIN_SIZE - 1);
+        Assert.assertEquals(Proc.ReadBuffer.MIN_SIZE, buffer.bytes().length);
+        for (int size = Proc.ReadBuffer.MIN_SIZE; size < Proc.ReadBuffer.MAX_SIZE; size *= 2) {
+            buffer.adapt(size);
+            Assert.assertEquals(size * 2, buffer.bytes().length);
+        }
+        buffer.adapt(Proc.ReadBuffer.MAX_SIZE);
+        Assert.assertEquals(Proc.ReadBuffer.MAX_SIZE, buffer.bytes().length);
+    }
+
+    @Test
+    public void shrinksAfterARunOfSmallReads() {
+        Proc.ReadBuffer buffer = new Proc.ReadBuffer();
+        buffer.adapt(4 * 1024);
+        buffer.adapt(8 * 1024);
+        Assert.assertEquals(16 * 1024, buffer.bytes().length);
+
+        for (int ii = 1; ii < Proc.ReadBuffer.SMALL_READS_BEFORE_SHRINK; ++ii) {
+            buffer.adapt(100);
+        }
+        // a read using a quarter or more restarts the run
+        buffer.adapt(4 * 1024);
+        for (int ii = 1; ii < Proc.ReadBuffer.SMALL_READS_BEFORE_SHRINK; ++ii) {
+            buffer.adapt(100);
+        }
+        Assert.assertEquals(16 * 1024, buffer.bytes().length);
+        buffer.adapt(100);
+        Assert.assertEquals(8 * 1024, buffer.bytes().length);
+
+        for (int run = 0; run < 4; ++run) {
+            for (int ii = 0; ii < Proc.ReadBuffer.SMALL_READS_BEFORE_SHRINK; ++ii) {
+                buffer.adapt(1);
+            }
+        }
+        Assert.assertEquals(Proc.ReadBuffer.MIN_SIZE, buffer.bytes().length);
+    }
+
+    @Test
+    public void histogramBuckets() {
+        ChunkHistogram histogram = new ChunkHistogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(3);
+        histogram.record(4096);
+        histogram.record(8191);
+        histogram.record(8192);
+        Assert.assertEquals(1, histogram.count(0));
+        Assert.assertEquals(1, histogram.count(1));
+        Assert.assertEquals(2, histogram.count(12));
+        Assert.assertEquals(1, histogram.count(13));
+        Assert.assertEquals(5, histogram.getReads());
+        Assert.assertEquals(1 + 3 + 4096 + 8191 + 8192, histogram.getBytes());
+        Assert.assertEquals(2, histogram.getCounts()[12]);
+        Assert.assertEquals("reads: 5, bytes: 20483, 1+: 1, 2+: 1, 4096+: 2, 8192+: 1", histogram.toString());
+    }
+
+    @Test
+    public void histogramIsPublishedOverJmx() throws Exception {
+        ChunkHistogram histogram = new ChunkHistogram();
+        histogram.record(4096);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("rpulp.mouclade:type=OutputChunkSizes,session=test");
+        server.registerMBean(histogram, name);
+        try {
+            histogram.record(100);
+            Assert.assertEquals(2L, server.getAttribute(name, "Reads"));
+            Assert.assertEquals(4196L, server.getAttribute(name, "Bytes"));
+            Assert.assertEquals(1L, ((long[]) server.getAttribute(name, "Counts"))[12]);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package rpulp.mouclade;
+
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SearcherTest {
+
+    private static class Recorder implements Searcher.Listener {
+        final List<String> matches = new ArrayList<>();
+        int count = -1;
+
+        @Override public void onMatch(Searcher.Match match) { matches.add(match.toString()); }
+
+        @Override public void onDone(int matchCount, boolean cancelled) { count = matchCount; }
+    }
+
+    private static TerminalModel model() {
+        TerminalModel model = new TerminalModel(new Scrollback(1000, 0));
+        model.resize(10, 2);
+        StringBuilder sb = new StringBuilder();
+        for (int ii = 0; ii < 200; ++ii) {
+            sb.append("row ").append(ii).append("\r\n");
+        }
+        sb.append("needle \u00e9t\u00e9\r\nNeedle");
+        new InputParser(model).parse(sb.toString().getBytes(Charsets.UTF_8));
+        return model;
+    }
+
+    private static Recorder search(TerminalModel model, String query, boolean regex, boolean ignoreCase) throws Exception {
+        Recorder recorder = new Recorder();
+        try (Searcher searcher = new Searcher(model)) {
+            searcher.search(query, regex, ignoreCase, recorder).get();
+        }
+        return recorder;
+    }
+
+    @Test
+    public void plainSearchGoesFromTheScreenUpTheHistory() throws Exception {
+        TerminalModel model = model();
+        Recorder recorder = search(model, "row 12", false, false);
+        // history row ids are the push order: "row 0" is id 0
+        Assert.assertEquals("[history 129:0+6, history 128:0+6, history 127:0+6, history 126:0+6, "
+                + "history 125:0+6, history 124:0+6, history 123:0+6, history 122:0+6, history 121:0+6, "
+                + "history 120:0+6, history 12:0+6]", recorder.matches.toString());
+        Assert.assertEquals(11, recorder.count);
+    }
+
+    @Test
+    public void ignoreCaseAndColumnsInCells() throws Exception {
+        TerminalModel model = model();
+        Assert.assertEquals("[screen 1:0+6, history 200:0+6]", search(model, "NEEDLE", false, true).matches.toString());
+        Assert.assertEquals("[history 200:7+3]", search(model, "\u00e9t\u00e9", false, false).matches.toString());
+    }
+
+    @Test
+    public void regexSearch() throws Exception {
+        TerminalModel model = model();
+        Recorder recorder = search(model, "row 19[5-9]|^N", true, false);
+        Assert.assertEquals("[screen 1:0+1, history 199:0+7, history 198:0+7, history 197:0+7, history 196:0+7, "
+                + "history 195:0+7]", recorder.matches.toString());
+    }
+
+    @Test
+    public void regexSearchSkipsTheBlocksWithoutItsLiterals() throws Exception {
+        TerminalModel model = model();
+        Assert.assertEquals("[history 195:0+7, history 185:0+7, history 175:0+7]",
+                search(model, "row 1[7-9]5", true, false).matches.toString());
+        Assert.assertEquals("[history 200:0+6]", search(model, "ne+dle", true, false).matches.toString());
+    }
+
+    @Test
+    public void literalsRequiredByARegex() {
+        Assert.assertEquals(Arrays.asList("foo", "bar"), Searcher.requiredLiterals("foo.*bar"));
+        Assert.assertEquals(Arrays.asList("a", "cd"), Searcher.requiredLiterals("ab*cd"));
+        Assert.assertEquals(Arrays.asList("colo", "r"), Searcher.requiredLiterals("colou?r"));
+        Assert.assertEquals(Arrays.asList("x.y", "z"), Searcher.requiredLiterals("x\\.y+z"));
+        Assert.assertEquals(Arrays.asList("def", "gh"), Searcher.requiredLiterals("(a|bc)?def[g-h]gh"));
+        Assert.assertEquals(Arrays.asList(" errors"), Searcher.requiredLiterals("\\d+ errors"));
+        Assert.assertEquals(Arrays.asList("ab"), Searcher.requiredLiterals("abc{0,2}\\Qxyz\\E"));
+        Assert.assertEquals(Collections.emptyList(), Searcher.requiredLiterals("foo|bar"));
+        Assert.assertEquals(Collections.emptyList(), Searcher.requiredLiterals("(?i)foo"));
+    }
+
+    @Test
+    public void indexSkipsBlocksWithoutTheTrigrams() {
+        TrigramIndex index = new TrigramIndex();
+        int[] row = "hello world".codePoints().toArray();
+        index.add(3, row, 0, row.length);
+        // the block being filled is not filtered
+        Assert.assertTrue(index.mayContain(0, TrigramIndex.trigrams("planet")));
+        index.add(TrigramIndex.BLOCK_ROWS - 1, row, 0, 0);
+        Assert.assertTrue(index.mayContain(0, TrigramIndex.trigrams("WORLD")));
+        Assert.assertFalse(index.mayContain(0, TrigramIndex.trigrams("planet")));
+        index.evict(TrigramIndex.BLOCK_ROWS - 1);
+        Assert.assertTrue(index.mayContain(0, TrigramIndex.trigrams("planet")));
+    }
+
+    @Test
+    public void indexFoldsCaseLikeThePattern() throws Exception {
+        TerminalModel model = new TerminalModel(new Scrollback(1000, 0));
+        model.resize(10, 2);
+        StringBuilder sb = new StringBuilder("\u017ftate\r\n");
+        for (int ii = 0; ii < 100; ++ii) {
+            sb.append("row ").append(ii).append("\r\n");
+        }
+        new InputParser(model).parse(sb.toString().getBytes(Charsets.UTF_8));
+        // U+017F long s matches s and S ignoring the case, its block must not be skipped
+        Assert.assertEquals("[history 0:0+5]", search(model, "STATE", false, true).matches.toString());
+        Assert.assertEquals("[]", search(model, "STATE", false, false).matches.toString());
+    }
+
+    @Test
+    public void filtersAreSizedToTheirTrigrams() {
+        TrigramIndex index = new TrigramIndex();
+        int[] blank = new int[0];
+        for (int ii = 0; ii < TrigramIndex.BLOCK_ROWS; ++ii) {
+            index.add(ii, blank, 0, 0);
+        }
+        long blankBytes = index.bytes();
+        Assert.assertTrue(blankBytes < 100);
+        for (int ii = TrigramIndex.BLOCK_ROWS; ii < 2 * TrigramIndex.BLOCK_ROWS; ++ii) {
+            int[] row = ("row " + ii * 7919 + " of varied text").codePoints().toArray();
+            index.add(ii, row, 0, row.length);
+        }
+        Assert.assertTrue(index.bytes() - blankBytes > 200);
+        index.evict(2 * TrigramIndex.BLOCK_ROWS - 1);
+        Assert.assertEquals(blankBytes, index.bytes());
+    }
+
+    @Test
+    public void maxBytesBoundsTheRowsAndTheirIndex() {
+        Scrollback scrollback = new Scrollback(100_000, 64 * 1024);
+        int[] styles = new int[80];
+        for (int ii = 0; ii < 10_000; ++ii) {
+            int[] row = String.format("%-80s", "row " + ii * 7919 + " of varied text").codePoints().toArray();
+            scrollback.push(row, styles, 0, 80, false);
+        }
+        Assert.assertTrue(scrollback.bytes() <= 64 * 1024);
+        Assert.assertTrue(scrollback.size() < 10_000);
+    }
+}
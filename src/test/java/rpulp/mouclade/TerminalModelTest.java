@@ -0,0 +1,352 @@
+package rpulp.mouclade;
+
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class TerminalModelTest {
+
+    private static TerminalModel model(int width, int height) {
+        return model(width, height, new Scrollback(100, 0));
+    }
+
+    private static TerminalModel model(int width, int height, Scrollback scrollback) {
+        TerminalModel model = new TerminalModel(scrollback);
+        model.resize(width, height);
+        return model;
+    }
+
+    private static void write(TerminalModel model, String text) {
+        new InputParser(model).parse(text.getBytes(Charsets.ISO_8859_1));
+    }
+
+    private static String row(TerminalModel model, int yy) {
+        return new String(model.codePoints(), model.rowStart(yy), model.width());
+    }
+
+    @Test
+    public void scrollKeepsRowsInOrder() {
+        TerminalModel model = model(4, 3);
+        write(model, "a\r\nb\r\nc\r\nd\r\ne");
+        Assert.assertEquals("c   ", row(model, 0));
+        Assert.assertEquals("d   ", row(model, 1));
+        Assert.assertEquals("e   ", row(model, 2));
+        Assert.assertEquals(model.at(0, 2) + 3, model.at(3, 2));
+    }
+
+    @Test
+    public void longRunWraps() {
+        TerminalModel model = model(4, 3);
+        write(model, "abcdefghij");
+        Assert.assertEquals("abcd", row(model, 0));
+        Assert.assertEquals("efgh", row(model, 1));
+        Assert.assertEquals("ij  ", row(model, 2));
+    }
+
+    @Test
+    public void eraseAfterScroll() {
+        TerminalModel model = model(4, 3);
+        write(model, "aaa\r\nbbb\r\nccc\r\nddd\u001B[2;3H\u001B[0J");
+        Assert.assertEquals("bbb ", row(model, 0));
+        Assert.assertEquals("cc  ", row(model, 1));
+        Assert.assertEquals("    ", row(model, 2));
+    }
+
+    @Test
+    public void scrollRegionKeepsRowsOutside() {
+        TerminalModel model = model(2, 4);
+        write(model, "a\r\nb\r\nc\r\nd\u001B[2;3r\u001B[3;1Hx\r\ny");
+        Assert.assertEquals("a ", row(model, 0));
+        Assert.assertEquals("x ", row(model, 1));
+        Assert.assertEquals("y ", row(model, 2));
+        Assert.assertEquals("d ", row(model, 3));
+        Assert.assertEquals(0, model.scrollback().size());
+    }
+
+    @Test
+    public void insertAndDeleteLines() {
+        TerminalModel model = model(2, 4);
+        write(model, "a\r\nb\r\nc\r\nd\u001B[2H\u001B[2L");
+        Assert.assertEquals("a ", row(model, 0));
+        Assert.assertEquals("  ", row(model, 1));
+        Assert.assertEquals("  ", row(model, 2));
+        Assert.assertEquals("b ", row(model, 3));
+        write(model, "\u001B[3M");
+        Assert.assertEquals("a ", row(model, 0));
+        Assert.assertEquals("  ", row(model, 1));
+        Assert.assertEquals("  ", row(model, 3));
+    }
+
+    @Test
+    public void reverseIndexScrollsDownAtTheTop() {
+        TerminalModel model = model(2, 3);
+        write(model, "a\r\nb\r\nc\u001B[H\u001BMz\u001B[S");
+        Assert.assertEquals("a ", row(model, 0));
+        Assert.assertEquals("b ", row(model, 1));
+        Assert.assertEquals("  ", row(model, 2));
+        Assert.assertEquals("z ", historyRow(model, 0));
+    }
+
+    @Test
+    public void alternateScreenKeepsThePrimaryOne() {
+        TerminalModel model = model(3, 2);
+        write(model, "ab\r\nc\u001B[?1049h");
+        Assert.assertTrue(model.isAlternateScreen());
+        Assert.assertEquals("   ", row(model, 0));
+        write(model, "\u001B[Hx\r\ny\r\nz");
+        Assert.assertEquals("y  ", row(model, 0));
+        Assert.assertEquals(0, model.scrollback().size());
+        write(model, "\u001B[?1049lZ");
+        Assert.assertFalse(model.isAlternateScreen());
+        Assert.assertEquals("ab ", row(model, 0));
+        Assert.assertEquals("cZ ", row(model, 1));
+    }
+
+    @Test
+    public void resizeReflowsWrappedLines() {
+        TerminalModel model = model(4, 3);
+        write(model, "abcdef\r\nxy");
+        model.resize(6, 3);
+        Assert.assertEquals("abcdef", row(model, 0));
+        Assert.assertEquals("xy    ", row(model, 1));
+        write(model, "z");
+        Assert.assertEquals("xyz   ", row(model, 1));
+
+        // the caret wraps to its own row, the first row goes to the history
+        model.resize(3, 3);
+        Assert.assertEquals("def", row(model, 0));
+        Assert.assertEquals("xyz", row(model, 1));
+        Assert.assertEquals("   ", row(model, 2));
+        Assert.assertEquals("abc", historyRow(model, 0));
+    }
+
+    @Test
+    public void resizePushesTheRowsAboveTheCaretToHistory() {
+        TerminalModel model = model(6, 2);
+        write(model, "abcde\r\nxy");
+        model.resize(3, 2);
+        Assert.assertEquals(1, model.scrollback().size());
+        Assert.assertTrue(model.scrollback().isWrapped(0));
+        Assert.assertEquals("abc", historyRow(model, 0));
+        Assert.assertEquals("de ", row(model, 0));
+        Assert.assertEquals("xy ", row(model, 1));
+        // the caret kept its place at the end of "xy"
+        write(model, "!");
+        Assert.assertEquals("xy!", row(model, 0));
+    }
+
+    @Test
+    public void historyIsRewrappedAtTheScreenWidth() {
+        TerminalModel model = model(4, 2);
+        write(model, "abcdefghij\r\nk\r\n\r\n");
+        Assert.assertEquals("k   ", displayedHistoryRow(model, 0));
+        Assert.assertEquals("efgh", displayedHistoryRow(model, 2));
+        Assert.assertEquals("abcd", displayedHistoryRow(model, 3));
+
+        model.resize(6, 2);
+        Assert.assertEquals("k     ", displayedHistoryRow(model, 0));
+        Assert.assertEquals("ghij  ", displayedHistoryRow(model, 1));
+        Assert.assertEquals("abcdef", displayedHistoryRow(model, 2));
+        Assert.assertNull(displayedHistoryRow(model, 3));
+    }
+
+    private static String displayedHistoryRow(TerminalModel model, int row) {
+        int width = model.width();
+        int[] codePoints = new int[width];
+        if (!model.readHistoryRow(row, codePoints, new int[width], 0)) {
+            return null;
+        }
+        return new String(codePoints, 0, width);
+    }
+
+    private static String historyRow(TerminalModel model, int row) {
+        int width = model.width();
+        int[] codePoints = new int[width];
+        model.scrollback().readLine(row, codePoints, new int[width], 0, width);
+        return new String(codePoints, 0, width);
+    }
+
+    @Test
+    public void scrolledRowsGoToHistory() {
+        TerminalModel model = model(4, 2);
+        write(model, "a\r\nbb\r\nccc\r\nd");
+        Assert.assertEquals(2, model.scrollback().size());
+        Assert.assertEquals(1, model.scrollback().lineLength(0));
+        Assert.assertEquals("a   ", historyRow(model, 0));
+        Assert.assertEquals("bb  ", historyRow(model, 1));
+    }
+
+    @Test
+    public void historyKeepsSupplementaryCharacters() {
+        TerminalModel model = model(4, 2);
+        new InputParser(model).parse("\uD83D\uDE00\u00e9\r\n\r\n".getBytes(Charsets.UTF_8));
+        Assert.assertEquals(2, model.scrollback().lineLength(0));
+        Assert.assertEquals("\uD83D\uDE00\u00e9  ", historyRow(model, 0));
+    }
+
+    @Test
+    public void historyEvictsOldestRows() {
+        TerminalModel model = model(4, 2, new Scrollback(3, 0));
+        for (int ii = 0; ii < 10; ++ii) {
+            write(model, ii + "\r\n");
+        }
+        Assert.assertEquals(3, model.scrollback().size());
+        Assert.assertEquals("6   ", historyRow(model, 0));
+        Assert.assertEquals("8   ", historyRow(model, 2));
+    }
+
+    @Test
+    public void historyKeepsStyleRuns() {
+        Scrollback scrollback = new Scrollback(10, 0);
+        int[] codePoints = "abcd  ".codePoints().toArray();
+        int[] styles = {1, 1, 2, 3, 0, 0};
+        scrollback.push(codePoints, styles, 0, 6, false);
+        Assert.assertEquals(4, scrollback.lineLength(0));
+        int[] stylesOut = {9, 9, 9, 9, 9, 9};
+        scrollback.readLine(0, new int[6], stylesOut, 0, 6);
+        Assert.assertArrayEquals(styles, stylesOut);
+    }
+
+    @Test
+    public void sgrSetsThePen() {
+        TerminalModel model = model(4, 2);
+        write(model, "\u001B[1;31mX\u001B[38;2;1;2;3;4mY\u001B[0mZ\u001B[48;5;200m\u001B[K");
+        StyleTable table = model.styleTable();
+        int[] styles = model.styles();
+        Assert.assertEquals(StyleTable.INDEXED | 1, table.fg(styles[0]));
+        Assert.assertEquals(StyleTable.BOLD, table.flags(styles[0]));
+        Assert.assertEquals(0x010203, table.fgRgb(styles[1]));
+        Assert.assertEquals(StyleTable.BOLD | StyleTable.UNDERLINE, table.flags(styles[1]));
+        Assert.assertEquals(StyleTable.DEFAULT, styles[2]);
+        // erased cells take the background of the pen
+        Assert.assertEquals(StyleTable.INDEXED | 200, table.bg(styles[3]));
+        Assert.assertEquals(0, table.flags(styles[3]));
+    }
+
+    @Test
+    public void styleSpansFollowWritesAndScrolls() {
+        TerminalModel model = model(6, 2);
+        write(model, "ab\u001B[7mcd\u001B[0me\r\n\u001B[1mxy");
+        int inverse = model.styles()[2];
+        int bold = model.styles()[model.at(0, 1)];
+        Assert.assertArrayEquals(new int[]{3, 0, 2, 0, 2, 2, inverse, 4, 2, 0}, spans(model, 0));
+        Assert.assertArrayEquals(new int[]{2, 0, 2, bold, 2, 4, 0}, spans(model, 1));
+        write(model, "\r\n");
+        Assert.assertArrayEquals(new int[]{2, 0, 2, bold, 2, 4, 0}, spans(model, 0));
+        Assert.assertArrayEquals(new int[]{1, 0, 6, 0}, spans(model, 1));
+    }
+
+    private static int[] spans(TerminalModel model, int yy) {
+        int[] spans = model.styleSpans(yy);
+        return Arrays.copyOf(spans, 1 + spans[0] * StyleSpans.SPAN_SIZE);
+    }
+
+    @Test
+    public void equalStylesShareAnId() {
+        StyleTable table = new StyleTable();
+        int id = table.intern(StyleTable.INDEXED | 2, 0, StyleTable.INVERSE);
+        Assert.assertEquals(id, table.intern(StyleTable.INDEXED | 2, 0, StyleTable.INVERSE));
+        Assert.assertEquals(StyleTable.DEFAULT, table.intern(0, 0, 0));
+        Assert.assertEquals(0x000000, table.fgRgb(id));
+        Assert.assertEquals(0x00cd00, table.bgRgb(id));
+    }
+
+    private static class DamageRecorder implements TerminalModel.Listener {
+        final ArrayList<String> updates = new ArrayList<>();
+
+        @Override public void onScroll(int top, int bottom, int n) { updates.add("scroll " + top + ".." + bottom + " " + n); }
+
+        @Override public void onRowUpdate(int y) { updates.add("row " + y); }
+
+        @Override public void onFullUpdate() { updates.add("full"); }
+    }
+
+    @Test
+    public void damageIsCoalescedPerRow() {
+        TerminalModel model = model(4, 3);
+        DamageRecorder recorder = new DamageRecorder();
+        model.drainDamage(recorder);
+        recorder.updates.clear();
+
+        write(model, "\u001B[2;1Hab\u001B[3;1Hc\u001B[2;3Hd");
+        Assert.assertTrue(model.drainDamage(recorder));
+        Assert.assertEquals("[row 1, row 2]", recorder.updates.toString());
+        Assert.assertFalse(model.drainDamage(recorder));
+    }
+
+    @Test
+    public void synchronizedUpdateHoldsTheDamage() {
+        TerminalModel model = model(4, 3);
+        DamageRecorder recorder = new DamageRecorder();
+        model.drainDamage(recorder);
+        recorder.updates.clear();
+
+        write(model, "\u001B[?2026ha\r\nb");
+        Assert.assertFalse(model.drainDamage(recorder));
+        write(model, "\u001B[?2026l");
+        Assert.assertTrue(model.drainDamage(recorder));
+        Assert.assertEquals("[row 0, row 1]", recorder.updates.toString());
+
+        // an application that never ends its update is shown anyway after a while
+        write(model, "\u001B[?2026hc");
+        Assert.assertFalse(model.drainDamage(recorder));
+        Assert.assertTrue(model.drainDamage(recorder, System.nanoTime() + TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void floodSkipsFrames() {
+        TerminalModel model = model(4, 3);
+        model.setFloodFrameInterval(TimeUnit.MILLISECONDS.toNanos(50));
+        DamageRecorder recorder = new DamageRecorder();
+        long now = System.nanoTime();
+        model.drainDamage(recorder, now);
+
+        // a few rows: drained on every frame
+        write(model, "a\r\n");
+        Assert.assertTrue(model.drainDamage(recorder, now + TimeUnit.MILLISECONDS.toNanos(16)));
+        // more than a screen: capped rate, the damage waits for the next allowed frame
+        write(model, "a\r\nb\r\nc\r\nd\r\n");
+        Assert.assertFalse(model.drainDamage(recorder, now + TimeUnit.MILLISECONDS.toNanos(32)));
+        write(model, "e\r\n");
+        Assert.assertTrue(model.drainDamage(recorder, now + TimeUnit.MILLISECONDS.toNanos(70)));
+    }
+
+    @Test
+    public void scrollsAreReportedAsShifts() {
+        TerminalModel model = model(4, 5);
+        DamageRecorder recorder = new DamageRecorder();
+        model.drainDamage(recorder);
+        recorder.updates.clear();
+
+        // row 2 written, then the screen scrolls twice: it is now row 0, the last 2 rows are exposed
+        write(model, "\u001B[3;1Hab\u001B[5;1H\r\n\r\n");
+        model.drainDamage(recorder);
+        Assert.assertEquals("[scroll 0..4 2, row 0, row 3, row 4]", recorder.updates.toString());
+        recorder.updates.clear();
+
+        // another region: the first scroll is kept, the second region is repainted
+        write(model, "\u001B[S\u001B[2;3r\u001B[T");
+        model.drainDamage(recorder);
+        Assert.assertEquals("[scroll 0..4 1, row 1, row 2, row 4]", recorder.updates.toString());
+        recorder.updates.clear();
+
+        // scrolling the whole region away is a plain repaint, past the flood frame interval
+        write(model, "\u001B[r\u001B[9S");
+        model.drainDamage(recorder, System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        Assert.assertEquals("[row 0, row 1, row 2, row 3, row 4]", recorder.updates.toString());
+    }
+
+    @Test
+    public void resizeListenerRunsWithoutTheMonitor() {
+        TerminalModel model = model(4, 3);
+        ArrayList<String> sizes = new ArrayList<>();
+        model.setResizeListener((width, height) -> sizes.add(width + "x" + height + " " + Thread.holdsLock(model)));
+        Assert.assertTrue(model.resize(6, 2));
+        Assert.assertFalse(model.resize(6, 2));
+        Assert.assertEquals("[6x2 false]", sizes.toString());
+    }
+}